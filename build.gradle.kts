@@ -25,6 +25,11 @@ sourceSets {
         compileClasspath += sourceSets.main.get().output + configurations.testRuntimeClasspath.get()
         runtimeClasspath += output + compileClasspath
     }
+    create("jmh") {
+        java.srcDir("src/jmh/java")
+        compileClasspath += sourceSets.main.get().output + configurations.runtimeClasspath.get()
+        runtimeClasspath += output + compileClasspath
+    }
 }
 
 tasks.named<Copy>("processItestResources").configure {
@@ -43,8 +48,8 @@ repositories {
 
 dependencies {
     implementation(libs.caffeine.cache)
-    implementation(libs.google.guava)
-    implementation(libs.kafka.streams)
+    implementation(libs.httpclient5)
+    implementation(libs.kafka.clients)
     implementation(libs.spring.boot.starter.actuator)
     implementation(libs.spring.boot.starter.cache)
     implementation(libs.spring.boot.starter.security)
@@ -62,9 +67,13 @@ dependencies {
     testImplementation(libs.junit.jupiter.params)
     testImplementation(libs.spring.boot.starter.test)
     testImplementation(libs.spring.boot.testcontainers)
+    testImplementation(libs.spring.kafka.test)
     testImplementation(libs.testcontainers)
     testImplementation(libs.testcontainers.junit.jupiter)
     testImplementation(libs.testcontainers.redpanda)
+
+    "jmhImplementation"(libs.jmh.core)
+    "jmhAnnotationProcessor"(libs.jmh.generator.annprocess)
 }
 
 tasks.withType<Test> {
@@ -73,10 +82,50 @@ tasks.withType<Test> {
 
 val itest by tasks.registering(Test::class) {
     group = "verification"
-    description = "Runs the integration tests."
+    description = "Runs the integration tests, except the load tests."
     testClassesDirs = sourceSets.named("itest").get().output.classesDirs
     classpath = sourceSets.named("itest").get().runtimeClasspath
     dependsOn("itestClasses")
+    useJUnitPlatform {
+        excludeTags("load")
+    }
+}
+
+val loadTest by tasks.registering(Test::class) {
+    group = "verification"
+    description = "Runs the load tests."
+    testClassesDirs = sourceSets.named("itest").get().output.classesDirs
+    classpath = sourceSets.named("itest").get().runtimeClasspath
+    dependsOn("itestClasses")
+    useJUnitPlatform {
+        includeTags("load")
+    }
+    // Settings for the query load test, e.g. -Ploadtest.concurrency=32
+    systemProperties(project.properties.filterKeys { it.startsWith("loadtest.") })
+}
+
+val jmh by tasks.registering(JavaExec::class) {
+    group = "verification"
+    description = "Runs the JMH benchmarks and writes their results as JSON to build/reports/jmh/<commit>.json. " +
+            "Pass JMH options with -PjmhArgs, e.g. -PjmhArgs=\"SerdeBenchmark -f 1\"."
+    val resultsDir = layout.buildDirectory.dir("reports/jmh")
+    val commit = providers.exec {
+        commandLine("git", "rev-parse", "--short", "HEAD")
+        isIgnoreExitValue = true
+    }.standardOutput.asText.map { it.trim().ifEmpty { "unversioned" } }
+    val jmhArgs = providers.gradleProperty("jmhArgs")
+        .map { args -> args.split(" ").filter { it.isNotBlank() } }
+        .orElse(emptyList())
+    classpath = sourceSets.named("jmh").get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    dependsOn("jmhClasses")
+    doFirst {
+        resultsDir.get().asFile.mkdirs()
+    }
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-rf", "json", "-rff", resultsDir.get().file("${commit.get()}.json").asFile.absolutePath) +
+                jmhArgs.get()
+    })
 }
 
 val createStores by tasks.registering {
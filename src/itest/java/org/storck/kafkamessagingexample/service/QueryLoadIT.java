@@ -0,0 +1,194 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.storck.kafkamessagingexample.model.SimpleQuery;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.MEMBERSHIP_TOPIC_NAME;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.QUERY_TOPIC_NAME;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
+
+/**
+ * Drives broadcast queries through {@link QueryService} against an embedded broker, with simulated responder nodes
+ * that answer every query after a fixed delay, and reports throughput, latency percentiles and the timeout rate.
+ * Each query completes once every simulated responder has answered, or times out.
+ * <p>
+ * The test is tagged {@code load}, so it runs with the {@code loadTest} task rather than the {@code itest} task.
+ * The load is set with {@code loadtest.*} system properties, which the {@code loadTest} task takes from Gradle
+ * properties of the same name: {@code concurrency}, {@code queries}, {@code warmup-queries}, {@code responders},
+ * {@code responder-delay-ms} and {@code timeout-ms}.  The run fails if the timeout rate exceeds
+ * {@code max-timeout-rate} or the p99 latency exceeds {@code max-p99-ms}.
+ */
+@EmbeddedKafka(partitions = 1, topics = {QUERY_TOPIC_NAME, RESULT_TOPIC_NAME, MEMBERSHIP_TOPIC_NAME})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}")
+@Tag("load")
+class QueryLoadIT {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLoadIT.class);
+
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 8);
+
+    private static final int QUERIES = Integer.getInteger("loadtest.queries", 1000);
+
+    private static final int WARMUP_QUERIES = Integer.getInteger("loadtest.warmup-queries", 100);
+
+    private static final int RESPONDERS = Integer.getInteger("loadtest.responders", 3);
+
+    private static final long RESPONDER_DELAY_MS = Long.getLong("loadtest.responder-delay-ms", 0);
+
+    private static final Duration TIMEOUT = Duration.ofMillis(Long.getLong("loadtest.timeout-ms", 2000));
+
+    private static final double MAX_TIMEOUT_RATE =
+            Double.parseDouble(System.getProperty("loadtest.max-timeout-rate", "0.01"));
+
+    private static final long MAX_P99_MS = Long.getLong("loadtest.max-p99-ms", TIMEOUT.toMillis());
+
+    @Autowired
+    QueryService queryService;
+
+    @Autowired
+    KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Autowired
+    ConcurrentMessageListenerContainer<String, SimpleResponse> responseRouterListenerContainer;
+
+    @Autowired
+    ConcurrentKafkaListenerContainerFactory<String, SimpleQuery> simpleQueryKafkaListenerContainerFactory;
+
+    @Autowired
+    KafkaTemplate<String, SimpleResponse> simpleResponseKafkaTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final List<ConcurrentMessageListenerContainer<String, SimpleQuery>> simulatedResponders =
+            new ArrayList<>();
+
+    @BeforeEach
+    void startResponders() {
+        for (int i = 0; i < RESPONDERS; i++) {
+            simulatedResponders.add(simulatedResponder("simulated-" + i));
+        }
+        simulatedResponders.forEach(responder -> ContainerTestUtils.waitForAssignment(responder, 1));
+        ContainerTestUtils.waitForAssignment(responseRouterListenerContainer, 1);
+        kafkaListenerEndpointRegistry.getListenerContainers()
+                .forEach(container -> ContainerTestUtils.waitForAssignment(container, 1));
+    }
+
+    @AfterEach
+    void stopResponders() {
+        simulatedResponders.forEach(ConcurrentMessageListenerContainer::stop);
+    }
+
+    @Test
+    void broadcastQueryLoad() throws InterruptedException {
+        runQueries(WARMUP_QUERIES, new long[WARMUP_QUERIES]);
+
+        Counter timeoutCounter = meterRegistry.get("query.timeouts").counter();
+        double timeoutsBefore = timeoutCounter.count();
+        long[] latencies = new long[QUERIES];
+        long startNanos = System.nanoTime();
+        int failures = runQueries(QUERIES, latencies);
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double timeoutRate = (timeoutCounter.count() - timeoutsBefore) / QUERIES;
+
+        Arrays.sort(latencies);
+        long p99Ms = percentileMs(latencies, 0.99);
+        log.info("Query load: {} queries, concurrency {}, {} responders, {} ms responder delay",
+                QUERIES, CONCURRENCY, RESPONDERS, RESPONDER_DELAY_MS);
+        log.info("Throughput: {} queries/s", String.format("%.1f", QUERIES / elapsedSeconds));
+        log.info("Latency: p50 {} ms, p99 {} ms, p999 {} ms, max {} ms",
+                percentileMs(latencies, 0.5), p99Ms, percentileMs(latencies, 0.999),
+                TimeUnit.NANOSECONDS.toMillis(latencies[latencies.length - 1]));
+        log.info("Timeout rate: {}, failures: {}", String.format("%.4f", timeoutRate), failures);
+
+        assertEquals(0, failures, "Queries failed");
+        assertTrue(timeoutRate <= MAX_TIMEOUT_RATE, "Timeout rate " + timeoutRate + " > " + MAX_TIMEOUT_RATE);
+        assertTrue(p99Ms <= MAX_P99_MS, "p99 latency " + p99Ms + " ms > " + MAX_P99_MS + " ms");
+    }
+
+    /**
+     * Runs the given number of queries with at most {@link #CONCURRENCY} in flight, recording each query's latency,
+     * and returns the number that failed.
+     */
+    private int runQueries(int queries, long[] latencies) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < queries; i++) {
+            int queryIndex = i;
+            inFlight.acquire();
+            long queryStartNanos = System.nanoTime();
+            CompletableFuture<List<String>> results = queryService.processLocalQueryAsync(null,
+                    "load-" + UUID.randomUUID(), TIMEOUT, CompletionPolicy.responses(RESPONDERS),
+                    ResultReducer.concat());
+            results.whenComplete((ignored, ex) -> {
+                latencies[queryIndex] = System.nanoTime() - queryStartNanos;
+                if (ex != null) {
+                    failures.incrementAndGet();
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(CONCURRENCY);
+        return failures.get();
+    }
+
+    /**
+     * Creates a responder that answers every query with one result after the configured delay, under a consumer
+     * group of its own, as a separate node would.
+     */
+    private ConcurrentMessageListenerContainer<String, SimpleQuery> simulatedResponder(String responderId) {
+        ConcurrentMessageListenerContainer<String, SimpleQuery> container =
+                simpleQueryKafkaListenerContainerFactory.createContainer(QUERY_TOPIC_NAME);
+        container.getContainerProperties().setGroupId(responderId + "_" + UUID.randomUUID());
+        container.getContainerProperties().setMessageListener(
+                (BatchMessageListener<String, SimpleQuery>) queryRecords -> queryRecords.stream()
+                        .filter(queryRecord -> queryRecord.value() != null)
+                        .forEach(queryRecord -> {
+                            SimpleResponse response = SimpleResponse.builder()
+                                    .id(queryRecord.value().getId())
+                                    .responderId(responderId)
+                                    .results(List.of(responderId + ": " + queryRecord.value().getQuery()))
+                                    .build();
+                            CompletableFuture.delayedExecutor(RESPONDER_DELAY_MS, TimeUnit.MILLISECONDS)
+                                    .execute(() -> simpleResponseKafkaTemplate.send(RESULT_TOPIC_NAME,
+                                            response.getId(), response));
+                        }));
+        container.start();
+        return container;
+    }
+
+    private static long percentileMs(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedLatencies[Math.max(0, index)]);
+    }
+}
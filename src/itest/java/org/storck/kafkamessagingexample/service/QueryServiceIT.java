@@ -1,8 +1,8 @@
 package org.storck.kafkamessagingexample.service;
 
-import org.apache.kafka.streams.StreamsBuilder;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -11,6 +11,8 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.storck.kafkamessagingexample.config.KafkaConfiguration;
+import org.storck.kafkamessagingexample.config.NodeId;
+import org.storck.kafkamessagingexample.handler.QueryProcessor;
 import org.storck.kafkamessagingexample.model.SimpleQuery;
 import org.storck.kafkamessagingexample.model.SimpleResponse;
 import org.testcontainers.junit.jupiter.Container;
@@ -20,7 +22,7 @@ import org.testcontainers.utility.DockerImageName;
 
 import java.time.Duration;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.Executor;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
@@ -39,7 +41,6 @@ class QueryServiceIT {
         registry.add("spring.kafka.bootstrap-servers", redpandaContainer::getBootstrapServers);
         registry.add("spring.kafka.consumer.bootstrap-servers", redpandaContainer::getBootstrapServers);
         registry.add("spring.kafka.producer.bootstrap-servers", redpandaContainer::getBootstrapServers);
-        registry.add("spring.kafka.streams.bootstrap-servers", redpandaContainer::getBootstrapServers);
     }
 
     @Autowired
@@ -66,22 +67,37 @@ class QueryServiceIT {
         private KafkaTemplate<String, SimpleResponse> simpleResponseKafkaTemplate;
 
         @Autowired
-        private SimpleResponseSerde simpleResponseSerde;
+        private ResponseRouter responseRouter;
 
         @Autowired
-        private StreamsBuilder streamsBuilder;
+        private QueryProcessor queryProcessor;
 
         @Autowired
-        private Properties streamsProperties;
+        @Qualifier("queryExecutor")
+        private Executor queryExecutor;
+
+        @Autowired
+        @Qualifier("responderExecutor")
+        private Executor responderExecutor;
+
+        @Autowired
+        private QueryMetrics queryMetrics;
+
+        @Autowired
+        private QueryTracer queryTracer;
 
         @Bean
         public QueryService queryService1() {
-            return new QueryService(simpleQueryKafkaTemplate, simpleResponseKafkaTemplate, simpleResponseSerde, streamsBuilder, streamsProperties);
+            return new QueryService(simpleQueryKafkaTemplate, simpleResponseKafkaTemplate, responseRouter,
+                    queryProcessor, queryExecutor, new NodeId("node-1"), responderExecutor, 256, Duration.ofSeconds(5),
+                    queryMetrics, queryTracer);
         }
 
         @Bean
         public QueryService queryService2() {
-            return new QueryService(simpleQueryKafkaTemplate, simpleResponseKafkaTemplate, simpleResponseSerde, streamsBuilder, streamsProperties);
+            return new QueryService(simpleQueryKafkaTemplate, simpleResponseKafkaTemplate, responseRouter,
+                    queryProcessor, queryExecutor, new NodeId("node-2"), responderExecutor, 256, Duration.ofSeconds(5),
+                    queryMetrics, queryTracer);
         }
     }
 }
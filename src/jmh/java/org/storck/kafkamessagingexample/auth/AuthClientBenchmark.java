@@ -0,0 +1,181 @@
+package org.storck.kafkamessagingexample.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import org.storck.kafkamessagingexample.config.AuthProperties;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up authorities through {@link RestAuthorizationClient} from a local stub of the authorization service, with
+ * a client that opens a new connection per lookup, the pooled client, and the HTTP/2-capable JDK client.
+ * <p>
+ * The stub serves HTTPS when the stores made by the {@code createStores} task are present in
+ * {@code build/generated/certs}, or in the directory named by the {@code auth.benchmark.certs} system property, and
+ * plain HTTP otherwise.  Over HTTPS, the {@code handshakes} counter reports the TLS connections the stub accepted,
+ * which shows how many full handshakes connection reuse saves.  The stub only speaks HTTP/1.1, so the JDK client
+ * falls back to it; the comparison shows its connection reuse rather than multiplexing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AuthClientBenchmark {
+
+    private static final AtomicLong ACCEPTED_CONNECTIONS = new AtomicLong();
+
+    private static final String STORE_PASSWORD = "changeme";
+
+    @Param({"unpooled", "pooled", "http2"})
+    private String client;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private AuthorizationClient authorizationClient;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Handshakes {
+
+        public long handshakes;
+
+        @TearDown(Level.Iteration)
+        public void collect() {
+            handshakes = ACCEPTED_CONNECTIONS.getAndSet(0);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SSLContext sslContext = stubSslContext();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (sslContext == null) {
+            server = HttpServer.create(address, 0);
+        } else {
+            HttpsServer httpsServer = HttpsServer.create(address, 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+                @Override
+                public void configure(HttpsParameters params) {
+                    ACCEPTED_CONNECTIONS.incrementAndGet();
+                    params.setSSLParameters(getSSLContext().getDefaultSSLParameters());
+                }
+            });
+            server = httpsServer;
+        }
+        byte[] body = "{\"authorities\":[\"Auth1\",\"Auth2\",\"Auth3\"]}".getBytes(StandardCharsets.UTF_8);
+        server.createContext("/api/user", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        String url = (sslContext == null ? "http" : "https") + "://localhost:" + server.getAddress().getPort()
+                + "/api/user";
+        SSLContext clientSslContext = sslContext == null ? SSLContext.getDefault() : sslContext;
+        AuthProperties.Http http = new AuthProperties.Http();
+        ClientHttpRequestFactory requestFactory = switch (client) {
+            case "unpooled" -> new HttpComponentsClientHttpRequestFactory(HttpClients.custom()
+                    .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                            .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                                    .setSslContext(clientSslContext)
+                                    .build())
+                            .build())
+                    .setConnectionReuseStrategy((request, response, context) -> false)
+                    .build());
+            case "pooled" -> AuthRequestFactories.pooled(http, clientSslContext);
+            case "http2" -> AuthRequestFactories.jdk(http, clientSslContext);
+            default -> throw new IllegalArgumentException("Unknown client: " + client);
+        };
+        authorizationClient = new RestAuthorizationClient(url, new RestTemplate(requestFactory), new ObjectMapper());
+        ACCEPTED_CONNECTIONS.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public List<String> lookup(Handshakes handshakes) {
+        return authorizationClient.authorities("CN=client", "CN=issuer");
+    }
+
+    /**
+     * Loads the key and trust stores made by the {@code createStores} task, or returns null if they are missing.
+     */
+    private static SSLContext stubSslContext() throws Exception {
+        Path certs = Path.of(System.getProperty("auth.benchmark.certs", "build/generated/certs"));
+        Path keystore = certs.resolve("keystore.p12");
+        Path truststore = certs.resolve("truststore.p12");
+        if (!Files.exists(keystore) || !Files.exists(truststore)) {
+            return null;
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(load(keystore), STORE_PASSWORD.toCharArray());
+        TrustManagerFactory trustManagerFactory =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(load(truststore));
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    private static KeyStore load(Path store) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(store)) {
+            keyStore.load(in, STORE_PASSWORD.toCharArray());
+        }
+        return keyStore;
+    }
+}
@@ -0,0 +1,94 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-record work of correlating queries and responses: the origin check that suppresses a node's own
+ * queries, and routing a response to its pending query, with varying numbers of queries in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int pendingQueries;
+
+    private final byte[] nodeIdBytes = "node-1".getBytes(StandardCharsets.UTF_8);
+
+    private Headers ownQueryHeaders;
+
+    private Headers otherQueryHeaders;
+
+    private ResponseRouter responseRouter;
+
+    private SimpleResponse pendingResponse;
+
+    private SimpleResponse unknownResponse;
+
+    @Setup
+    public void setUp() {
+        ownQueryHeaders = new RecordHeaders().add(QueryHeaders.ORIGIN_NODE, nodeIdBytes);
+        otherQueryHeaders = new RecordHeaders()
+                .add(QueryHeaders.ORIGIN_NODE, "node-2".getBytes(StandardCharsets.UTF_8));
+        responseRouter = new ResponseRouter(-1, new QueryMetrics(new SimpleMeterRegistry()));
+        String queryId = null;
+        for (int i = 0; i < pendingQueries; i++) {
+            queryId = UUID.randomUUID().toString();
+            responseRouter.register(queryId, new ResponseCollector(CompletionPolicy.timeout(), response -> {
+            }));
+        }
+        pendingResponse = response(queryId);
+        unknownResponse = response(UUID.randomUUID().toString());
+    }
+
+    @Benchmark
+    public boolean suppressOwnQuery() {
+        return QueryService.isOwnQuery(ownQueryHeaders, nodeIdBytes);
+    }
+
+    @Benchmark
+    public boolean passOtherQuery() {
+        return QueryService.isOwnQuery(otherQueryHeaders, nodeIdBytes);
+    }
+
+    @Benchmark
+    public boolean routePendingResponse() {
+        return responseRouter.routeResponse(pendingResponse);
+    }
+
+    @Benchmark
+    public boolean dropUnknownResponse() {
+        return responseRouter.routeResponse(unknownResponse);
+    }
+
+    private static SimpleResponse response(String queryId) {
+        return SimpleResponse.builder()
+                .id(queryId)
+                .responderId("node-2")
+                .results(List.of("result"))
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Combines the local results of a query with those of each remote responder, as a broadcast query does, for each
+ * built-in {@link ResultReducer} across responder counts.  Half of each responder's results are shared with every
+ * other responder, so deduplicating and merging reducers have overlap to remove.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReducerBenchmark {
+
+    @Param({"concat", "dedup", "top-k", "count", "merge-by-key"})
+    private String reducer;
+
+    @Param({"1", "10", "100"})
+    private int responders;
+
+    @Param({"10", "100"})
+    private int resultsPerResponder;
+
+    private ResultReducer<?> resultReducer;
+
+    private List<String> localResults;
+
+    private List<List<String>> remoteResults;
+
+    @Setup
+    public void setUp() {
+        resultReducer = new ResultReducers(Map.of()).resolve(reducer, 10);
+        localResults = results("local");
+        remoteResults = IntStream.range(0, responders)
+                .mapToObj(responder -> results("node-" + responder))
+                .toList();
+    }
+
+    @Benchmark
+    public List<String> combine() {
+        return combine(resultReducer);
+    }
+
+    private <A> List<String> combine(ResultReducer<A> reducer) {
+        A remoteAccumulator = reducer.newAccumulator();
+        remoteResults.forEach(results -> reducer.accumulate(remoteAccumulator, results));
+        A localAccumulator = reducer.newAccumulator();
+        reducer.accumulate(localAccumulator, localResults);
+        return reducer.finish(reducer.combine(localAccumulator, remoteAccumulator));
+    }
+
+    private List<String> results(String responderId) {
+        return IntStream.range(0, resultsPerResponder)
+                .mapToObj(i -> i % 2 == 0 ? "shared-" + i + ": value" : "key-" + i + ": " + responderId)
+                .toList();
+    }
+}
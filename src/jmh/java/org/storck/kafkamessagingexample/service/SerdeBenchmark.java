@@ -0,0 +1,92 @@
+package org.storck.kafkamessagingexample.service;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.storck.kafkamessagingexample.config.WireFormatProperties;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
+
+/**
+ * Serializes and deserializes a {@link SimpleResponse} with {@link SimpleResponseSerde} in each wire format, and with
+ * Spring's {@link JsonSerializer} as configured for heartbeats, across payload sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerdeBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private WireFormat wireFormat;
+
+    @Param({"1", "10", "100"})
+    private int resultCount;
+
+    @Param({"16", "256"})
+    private int resultLength;
+
+    private SimpleResponse response;
+
+    private Serializer<SimpleResponse> serializer;
+
+    private Deserializer<SimpleResponse> deserializer;
+
+    private JsonSerializer<SimpleResponse> springJsonSerializer;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        String result = "x".repeat(resultLength);
+        response = SimpleResponse.builder()
+                .id(UUID.randomUUID().toString())
+                .responderId(UUID.randomUUID().toString())
+                .results(IntStream.range(0, resultCount).mapToObj(i -> result).toList())
+                .build();
+        WireFormatProperties wireFormatProperties = new WireFormatProperties();
+        wireFormatProperties.setDefaultFormat(wireFormat);
+        SimpleResponseSerde serde = new SimpleResponseSerde(JsonMapper.builder().build(), wireFormatProperties);
+        serializer = serde.serializer();
+        deserializer = serde.deserializer();
+        springJsonSerializer = new JsonSerializer<>();
+        serialized = serializer.serialize(RESULT_TOPIC_NAME, response);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(RESULT_TOPIC_NAME, response);
+    }
+
+    @Benchmark
+    public SimpleResponse deserialize() {
+        return deserializer.deserialize(RESULT_TOPIC_NAME, serialized);
+    }
+
+    /**
+     * Ignores the wire format, so it only varies with the payload size.
+     */
+    @Benchmark
+    public byte[] springJsonSerialize() {
+        return springJsonSerializer.serialize(RESULT_TOPIC_NAME, response);
+    }
+}
@@ -0,0 +1,95 @@
+package org.storck.kafkamessagingexample.auth;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.storck.kafkamessagingexample.config.AuthProperties;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+
+/**
+ * Creates the HTTP clients that the authorization service is called with.  Both kinds reuse their connections, and
+ * resume TLS sessions from the one {@link SSLContext} they share, so a lookup rarely pays for a full handshake.
+ */
+public final class AuthRequestFactories {
+
+    private AuthRequestFactories() {
+    }
+
+    /**
+     * Creates a request factory from the HTTP settings: the JDK client when HTTP/2 is enabled, and otherwise a
+     * pooled Apache HttpClient.
+     */
+    public static ClientHttpRequestFactory create(AuthProperties.Http http, SSLContext sslContext) {
+        return http.isHttp2() ? jdk(http, sslContext) : pooled(http, sslContext);
+    }
+
+    /**
+     * Creates a request factory backed by a pool of keep-alive HTTP/1.1 connections.  Connection state tracking is
+     * disabled, since it would otherwise tie each connection that authenticated with the client certificate to a
+     * single caller and stop it from being reused.
+     */
+    public static ClientHttpRequestFactory pooled(AuthProperties.Http http, SSLContext sslContext) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager(http, sslContext))
+                .setDefaultRequestConfig(requestConfig(http))
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(http.getMaxIdleTime()))
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    static PoolingHttpClientConnectionManager connectionManager(AuthProperties.Http http, SSLContext sslContext) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                        .setSslContext(sslContext)
+                        .build())
+                .setMaxConnTotal(http.getMaxConnections())
+                .setMaxConnPerRoute(http.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(connectionConfig(http))
+                .build();
+    }
+
+    static ConnectionConfig connectionConfig(AuthProperties.Http http) {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(http.getConnectTimeout()))
+                .setSocketTimeout(Timeout.of(http.getReadTimeout()))
+                .setTimeToLive(TimeValue.of(http.getConnectionTimeToLive()))
+                .build();
+    }
+
+    static RequestConfig requestConfig(AuthProperties.Http http) {
+        return RequestConfig.custom()
+                .setResponseTimeout(Timeout.of(http.getReadTimeout()))
+                .build();
+    }
+
+    /**
+     * Creates a request factory backed by the JDK client, which negotiates HTTP/2 over TLS and multiplexes
+     * concurrent requests over one connection per host.
+     */
+    public static ClientHttpRequestFactory jdk(AuthProperties.Http http, SSLContext sslContext) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(jdkHttpClient(http, sslContext));
+        requestFactory.setReadTimeout(http.getReadTimeout());
+        return requestFactory;
+    }
+
+    static HttpClient jdkHttpClient(AuthProperties.Http http, SSLContext sslContext) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .sslContext(sslContext)
+                .connectTimeout(http.getConnectTimeout())
+                .build();
+    }
+}
@@ -0,0 +1,16 @@
+package org.storck.kafkamessagingexample.auth;
+
+import java.util.List;
+
+/**
+ * Looks up the authorities granted to a client, identified by its certificate's subject and issuer.
+ */
+public interface AuthorizationClient {
+
+    /**
+     * Returns the authorities granted to the client.  This may block, and is called off the request threads.
+     *
+     * @throws org.springframework.security.core.userdetails.UsernameNotFoundException if the client is unknown
+     */
+    List<String> authorities(String subject, String issuer);
+}
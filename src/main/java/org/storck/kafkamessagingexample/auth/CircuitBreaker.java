@@ -0,0 +1,63 @@
+package org.storck.kafkamessagingexample.auth;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calls to a failing dependency for a while, so callers fail fast instead of each waiting out a timeout.
+ * The circuit opens after a run of consecutive failures.  Once it has been open for the open duration, a single
+ * trial call is let through, and the circuit closes if the trial succeeds or reopens if it fails.
+ */
+public class CircuitBreaker {
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+
+    private final long openDurationNanos;
+
+    private final LongSupplier nanoTime;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAtNanos;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns true if a call may be made now, in which case its outcome must be passed to {@link #record(boolean)}.
+     */
+    public synchronized boolean tryAcquire() {
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> false;
+            case OPEN -> {
+                if (nanoTime.getAsLong() - openedAtNanos < openDurationNanos) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void record(boolean succeeded) {
+        if (succeeded) {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        } else if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = nanoTime.getAsLong();
+        }
+    }
+}
@@ -1,43 +1,154 @@
 package org.storck.kafkamessagingexample.auth;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.servlet.http.HttpServletRequest;
-import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
 
 import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.time.Clock;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Takes the principal, as {@code subject::issuer}, from the client certificate that the TLS-terminating proxy
+ * forwards in the {@value #CLIENT_CERT_HEADER} header.  Clients reuse a small set of certificates, so principals are
+ * cached by a SHA-256 digest of the header value, and each entry expires when its certificate does.  A certificate
+ * past its expiry time yields no principal, so the request is not authenticated.
+ */
 @Slf4j
-@NoArgsConstructor
 public class ClientCertAuthFilter extends AbstractPreAuthenticatedProcessingFilter {
 
+    static final String CLIENT_CERT_HEADER = "X-Forwarded-Tls-Client-Cert";
+
+    private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY =
+            ThreadLocal.withInitial(ClientCertAuthFilter::newCertificateFactory);
+
+    private static final ThreadLocal<MessageDigest> SHA_256 =
+            ThreadLocal.withInitial(ClientCertAuthFilter::newSha256Digest);
+
+    private final Cache<String, CertificatePrincipal> principals;
+
+    private final Timer parseTimer;
+
+    private final Clock clock;
+
+    public ClientCertAuthFilter(long cacheMaxSize, MeterRegistry meterRegistry) {
+        this(cacheMaxSize, meterRegistry, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a filter whose cache is timed by the given clock, so that entries expire by the same wall clock time
+     * that certificates are checked against.
+     */
+    ClientCertAuthFilter(long cacheMaxSize, MeterRegistry meterRegistry, Clock clock) {
+        this.clock = clock;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new CertificateExpiry())
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "clientCertPrincipals");
+        this.parseTimer = Timer.builder("auth.client-cert.parse")
+                .description("Time spent decoding and parsing a forwarded client certificate")
+                .register(meterRegistry);
+    }
+
     @Override
     protected Object getPreAuthenticatedPrincipal(HttpServletRequest request) {
-        log.info("########## ClientCertAuthFilter: getting pre-authenticated principal");
-        String clientCertPem = request.getHeader("X-Forwarded-Tls-Client-Cert");
-        if (clientCertPem != null) {
-            byte[] decoded = Base64.getDecoder().decode(clientCertPem);
-            try {
-                CertificateFactory cf = CertificateFactory.getInstance("X.509");
-                X509Certificate cert = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(decoded));
-                String subject = cert.getSubjectX500Principal().getName();
-                String issuer = cert.getIssuerX500Principal().getName();
-                log.info("########## Got principal: {}::{}", subject, issuer);
-                return subject + "::" + issuer;
-            } catch (CertificateException e) {
-                throw new IllegalArgumentException(
-                        "Error while parsing client certificate from request for subject and issuer information", e);
-            }
-        }
-        return null;
+        String clientCertPem = request.getHeader(CLIENT_CERT_HEADER);
+        if (clientCertPem == null) {
+            return null;
+        }
+        CertificatePrincipal certificatePrincipal =
+                principals.get(digest(clientCertPem), key -> parseTimer.record(() -> parse(clientCertPem)));
+        if (clock.millis() > certificatePrincipal.notAfter()) {
+            log.debug("Rejecting expired client certificate for principal: {}", certificatePrincipal.principal());
+            return null;
+        }
+        log.debug("Got principal: {}", certificatePrincipal.principal());
+        return certificatePrincipal.principal();
     }
 
     @Override
     protected Object getPreAuthenticatedCredentials(HttpServletRequest request) {
         return "NOT_APPLICABLE";
     }
-}
\ No newline at end of file
+
+    private static CertificatePrincipal parse(String clientCertPem) {
+        byte[] decoded = Base64.getDecoder().decode(clientCertPem);
+        try {
+            X509Certificate cert = (X509Certificate) CERTIFICATE_FACTORY.get()
+                    .generateCertificate(new ByteArrayInputStream(decoded));
+            String subject = cert.getSubjectX500Principal().getName();
+            String issuer = cert.getIssuerX500Principal().getName();
+            return new CertificatePrincipal(subject + "::" + issuer, cert.getNotAfter().getTime());
+        } catch (CertificateException e) {
+            throw new IllegalArgumentException(
+                    "Error while parsing client certificate from request for subject and issuer information", e);
+        }
+    }
+
+    private static String digest(String clientCertPem) {
+        return HexFormat.of().formatHex(SHA_256.get().digest(clientCertPem.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static CertificateFactory newCertificateFactory() {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException("X.509 certificate factory is not available", e);
+        }
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 digest is not available", e);
+        }
+    }
+
+    /**
+     * The principal taken from a certificate, and when the certificate expires, in epoch milliseconds.
+     */
+    private record CertificatePrincipal(String principal, long notAfter) {
+    }
+
+    /**
+     * Expires each cached principal when its certificate expires.  The cache's ticker reads the wall clock, so the
+     * current time it passes in is comparable with the certificate's expiry time.
+     */
+    private static class CertificateExpiry implements Expiry<String, CertificatePrincipal> {
+
+        @Override
+        public long expireAfterCreate(String key, CertificatePrincipal value, long currentTime) {
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(value.notAfter()) - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CertificatePrincipal value, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CertificatePrincipal value, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,47 +1,107 @@
 package org.storck.kafkamessagingexample.auth;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.userdetails.AuthenticationUserDetailsService;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
-import org.springframework.web.client.RestTemplate;
+import org.storck.kafkamessagingexample.config.AuthProperties;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the details of clients authenticated by certificate, with authorities from an {@link AuthorizationClient}.
+ * Details are cached per principal and refreshed ahead of expiry: once an entry is older than the refresh interval,
+ * the next request is served the cached details while they reload in the background.  Concurrent lookups of the
+ * same principal share a single call, each call is bounded by the lookup timeout, and a {@link CircuitBreaker}
+ * fails lookups fast while the authorization service keeps failing.  Only the first lookup of a principal, or one
+ * whose entry expired because it could not be refreshed, makes a request wait.
+ */
 @Slf4j
 public class ExternalAuthenticationUserDetailsService implements AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> {
 
-    private final String authServiceUrl = "https://your-auth-service.com/api/user";
+    private final AuthorizationClient authorizationClient;
+
+    private final CircuitBreaker circuitBreaker;
 
-    private final RestTemplate restTemplate;
+    private final long lookupTimeoutMs;
 
-    private final ObjectMapper objectMapper;
+    private final AsyncLoadingCache<String, UserDetails> userDetails;
 
-    public ExternalAuthenticationUserDetailsService(RestTemplate restTemplate, ObjectMapper objectMapper) {
-        this.restTemplate = restTemplate;
-        this.objectMapper = objectMapper;
+    public ExternalAuthenticationUserDetailsService(AuthorizationClient authorizationClient, Executor executor,
+                                                    AuthProperties.UserDetailsCache cacheSettings,
+                                                    CircuitBreaker circuitBreaker) {
+        this(authorizationClient, executor, cacheSettings, circuitBreaker, Ticker.systemTicker());
+    }
+
+    ExternalAuthenticationUserDetailsService(AuthorizationClient authorizationClient, Executor executor,
+                                             AuthProperties.UserDetailsCache cacheSettings,
+                                             CircuitBreaker circuitBreaker, Ticker ticker) {
+        this.authorizationClient = authorizationClient;
+        this.circuitBreaker = circuitBreaker;
+        this.lookupTimeoutMs = cacheSettings.getLookupTimeout().toMillis();
+        this.userDetails = Caffeine.newBuilder()
+                .maximumSize(cacheSettings.getMaxSize())
+                .refreshAfterWrite(cacheSettings.getRefreshAfter())
+                .expireAfterWrite(cacheSettings.getExpireAfter())
+                .ticker(ticker)
+                .executor(executor)
+                .buildAsync((principal, lookupExecutor) -> lookup(principal, lookupExecutor));
     }
 
     @Override
-    @Cacheable(cacheNames = "userDetails", key = "#token.getPrincipal")
     public UserDetails loadUserDetails(PreAuthenticatedAuthenticationToken token) throws UsernameNotFoundException {
         String principal = (String) token.getPrincipal();
-        String[] parts = principal.split("::");
-        if (parts.length != 2) {
+        if (principal.split("::").length != 2) {
             throw new UsernameNotFoundException("Invalid principal format");
         }
+        try {
+            return userDetails.get(principal).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while looking up user details", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UsernameNotFoundException usernameNotFound) {
+                throw usernameNotFound;
+            }
+            throw new AuthenticationServiceException("Failed to look up user details", e.getCause());
+        }
+    }
+
+    private CompletableFuture<UserDetails> lookup(String principal, Executor executor) {
+        if (!circuitBreaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(
+                    new AuthenticationServiceException("Authorization service circuit is open"));
+        }
+        String[] parts = principal.split("::");
         String subject = parts[0];
         String issuer = parts[1];
-        log.warn("########## Authenticating user with Subject DN: {} and Issuer DN: {}", subject, issuer);
-        String[] auths = new String[] {"Auth1", "Auth2", "Auth3"};
-        UserDetails userDetails = User.builder()
-                .password("not_used")
-                .username(subject)
-                .authorities(auths)
-                .build();
-        log.warn("########## User authorities: {}", userDetails.getAuthorities());
-        return userDetails;
+        return CompletableFuture.supplyAsync(() -> authorizationClient.authorities(subject, issuer), executor)
+                .orTimeout(lookupTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((authorities, ex) -> {
+                    Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                    circuitBreaker.record(cause == null || cause instanceof UsernameNotFoundException);
+                    if (cause instanceof TimeoutException) {
+                        log.warn("Authorization lookup for {} timed out after {} ms", subject, lookupTimeoutMs);
+                    }
+                })
+                .thenApply(authorities -> {
+                    log.debug("Authorities for {}: {}", subject, authorities);
+                    return User.builder()
+                            .password("not_used")
+                            .username(subject)
+                            .authorities(authorities.toArray(String[]::new))
+                            .build();
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package org.storck.kafkamessagingexample.auth;
+
+import java.util.List;
+
+/**
+ * Stand-in for the external authorization service that grants the same authorities to every client, for running
+ * locally and in tests.
+ */
+public class LocalAuthorizationClient implements AuthorizationClient {
+
+    private final List<String> authorities;
+
+    public LocalAuthorizationClient(List<String> authorities) {
+        this.authorities = List.copyOf(authorities);
+    }
+
+    @Override
+    public List<String> authorities(String subject, String issuer) {
+        return authorities;
+    }
+}
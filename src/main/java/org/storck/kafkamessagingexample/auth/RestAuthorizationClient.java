@@ -0,0 +1,57 @@
+package org.storck.kafkamessagingexample.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks up authorities from the external authorization service, which answers
+ * {@code GET <url>?subject=...&issuer=...} with a JSON object holding an {@code authorities} array.
+ */
+public class RestAuthorizationClient implements AuthorizationClient {
+
+    private final String authServiceUrl;
+
+    private final RestTemplate restTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    public RestAuthorizationClient(String authServiceUrl, RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.authServiceUrl = authServiceUrl;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public List<String> authorities(String subject, String issuer) {
+        URI uri = UriComponentsBuilder.fromHttpUrl(authServiceUrl)
+                .queryParam("subject", subject)
+                .queryParam("issuer", issuer)
+                .encode()
+                .build()
+                .toUri();
+        String body;
+        try {
+            body = restTemplate.getForObject(uri, String.class);
+        } catch (HttpClientErrorException.NotFound e) {
+            throw new UsernameNotFoundException("Unknown client: " + subject);
+        }
+        try {
+            JsonNode authorities = objectMapper.readTree(body).path("authorities");
+            List<String> result = new ArrayList<>(authorities.size());
+            authorities.forEach(authority -> result.add(authority.asText()));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed authorization service response", e);
+        }
+    }
+}
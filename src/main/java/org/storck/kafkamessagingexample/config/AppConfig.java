@@ -3,15 +3,87 @@ package org.storck.kafkamessagingexample.config;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.servers.Server;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.UUID;
 
 @Configuration
+@EnableScheduling
 @OpenAPIDefinition(servers = {@Server(url = "/", description = "Default Server URL")})
 public class AppConfig {
 
+    @Value("${kafka-messaging-example.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${kafka-messaging-example.query.executor.pool-size:16}")
+    private int queryExecutorPoolSize;
+
+    @Value("${kafka-messaging-example.responder.executor.pool-size:16}")
+    private int responderExecutorPoolSize;
+
+    @Value("${kafka-messaging-example.auth.executor.pool-size:4}")
+    private int authExecutorPoolSize;
+
     @Bean
     public JsonMapper jsonMapper() {
         return new JsonMapper();
     }
-}
\ No newline at end of file
+
+    /**
+     * Identifies this node as a responder to broadcast queries.  A random id is used when none is configured.
+     */
+    @Bean
+    public NodeId nodeId() {
+        return new NodeId(configuredNodeId.isBlank() ? UUID.randomUUID().toString() : configuredNodeId);
+    }
+
+    /**
+     * Executor for local query processing, kept off the request and consumer threads.  When virtual threads are
+     * enabled (requires a Java 21 runtime), each task gets its own virtual thread, so concurrency is bounded by
+     * memory instead of the pool size.
+     */
+    @Bean
+    public AsyncTaskExecutor queryExecutor() {
+        return executor("query-", queryExecutorPoolSize);
+    }
+
+    /**
+     * Executor that answers queries received from other nodes, kept off the Kafka consumer threads.  The number of
+     * queries in flight is bounded by the responder itself, so the executor only needs to bound threads.
+     */
+    @Bean
+    public AsyncTaskExecutor responderExecutor() {
+        return executor("responder-", responderExecutorPoolSize);
+    }
+
+    /**
+     * Executor for user-details lookups and background refreshes, so that calls to the authorization service never
+     * run on request threads.
+     */
+    @Bean
+    public AsyncTaskExecutor authExecutor() {
+        return executor("auth-", authExecutorPoolSize);
+    }
+
+    private AsyncTaskExecutor executor(String threadNamePrefix, int poolSize) {
+        if (virtualThreadsEnabled) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        return executor;
+    }
+}
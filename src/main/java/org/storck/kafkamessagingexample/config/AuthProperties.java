@@ -0,0 +1,111 @@
+package org.storck.kafkamessagingexample.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for looking up the authorities of authenticated clients.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka-messaging-example.auth")
+public class AuthProperties {
+
+    /**
+     * URL of the external authorization service.  When blank, a local stand-in grants the local authorities instead.
+     */
+    private String serviceUrl = "";
+
+    /**
+     * Authorities that the local stand-in grants to every client.
+     */
+    private List<String> localAuthorities = new ArrayList<>(List.of("Auth1", "Auth2", "Auth3"));
+
+    private UserDetailsCache userDetailsCache = new UserDetailsCache();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private Http http = new Http();
+
+    @Data
+    public static class UserDetailsCache {
+
+        /**
+         * Most principals whose details are cached.
+         */
+        private long maxSize = 10000;
+
+        /**
+         * Age after which a cached entry is reloaded in the background on its next use, while the current value is
+         * still served.
+         */
+        private Duration refreshAfter = Duration.ofMinutes(10);
+
+        /**
+         * Age after which a cached entry is no longer served, even if it could not be refreshed.
+         */
+        private Duration expireAfter = Duration.ofHours(12);
+
+        /**
+         * Longest time a lookup may take before it fails.
+         */
+        private Duration lookupTimeout = Duration.ofSeconds(2);
+    }
+
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * Consecutive failed lookups that open the circuit.
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * How long an open circuit fails lookups without calling the service, before letting one through to test it.
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Http {
+
+        /**
+         * Most pooled connections to the authorization service.
+         */
+        private int maxConnections = 50;
+
+        /**
+         * Most pooled connections to any one authorization service host.
+         */
+        private int maxConnectionsPerRoute = 20;
+
+        /**
+         * Longest time to wait for a connection to be established.
+         */
+        private Duration connectTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Longest time to wait for a response.
+         */
+        private Duration readTimeout = Duration.ofSeconds(2);
+
+        /**
+         * Age after which a pooled connection is closed rather than reused.
+         */
+        private Duration connectionTimeToLive = Duration.ofMinutes(5);
+
+        /**
+         * Idle time after which a pooled connection is closed.
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        /**
+         * Use the JDK HTTP client, which negotiates HTTP/2 and multiplexes requests over one connection per host,
+         * in place of the pooled HTTP/1.1 client.
+         */
+        private boolean http2;
+    }
+}
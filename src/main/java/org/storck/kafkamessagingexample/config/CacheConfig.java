@@ -1,11 +1,13 @@
 package org.storck.kafkamessagingexample.config;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.storck.kafkamessagingexample.service.QueryResultCache;
 
 import java.time.Duration;
 import java.util.List;
@@ -14,18 +16,38 @@ import java.util.List;
 @EnableCaching
 public class CacheConfig {
 
+    @Value("${kafka-messaging-example.result-cache.enabled:false}")
+    private boolean resultCacheEnabled;
+
+    @Value("${kafka-messaging-example.result-cache.ttl:30s}")
+    private Duration resultCacheTtl;
+
+    @Value("${kafka-messaging-example.result-cache.max-weight:10000000}")
+    private long resultCacheMaxWeight;
+
     @Bean
-    public CacheManager cacheManager(Caffeine<Object, Object> caffeine) {
+    public CacheManager cacheManager() {
         CaffeineCacheManager cacheManager = new CaffeineCacheManager();
-        cacheManager.setCacheNames(List.of("userDetails"));
-        cacheManager.setCaffeine(caffeine);
+        // Only the caches registered here exist; none are created on demand
+        cacheManager.setCacheNames(List.of());
+        if (resultCacheEnabled) {
+            cacheManager.registerCustomCache(QueryResultCache.CACHE_NAME, Caffeine.newBuilder()
+                    .expireAfterWrite(resultCacheTtl)
+                    .maximumWeight(resultCacheMaxWeight)
+                    .weigher(CacheConfig::weighResults)
+                    .recordStats()
+                    .build());
+        }
         return cacheManager;
     }
 
-    @Bean
-    public Caffeine<Object, Object> caffeine() {
-        return Caffeine.newBuilder()
-                .expireAfterWrite(Duration.ofHours(12))
-                .maximumSize(10000);
+    /**
+     * Weighs cached query results by their total length in characters.
+     */
+    private static int weighResults(Object key, Object value) {
+        if (value instanceof List<?> results) {
+            return results.stream().mapToInt(result -> String.valueOf(result).length()).sum();
+        }
+        return 1;
     }
-}
\ No newline at end of file
+}
@@ -1,66 +1,140 @@
 package org.storck.kafkamessagingexample.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
-import org.apache.kafka.streams.StreamsBuilder;
-import org.apache.kafka.streams.StreamsConfig;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Scope;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.support.TopicPartitionOffset;
+import org.springframework.kafka.support.TopicPartitionOffset.SeekPosition;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.storck.kafkamessagingexample.model.NodeHeartbeat;
 import org.storck.kafkamessagingexample.model.SimpleQuery;
 import org.storck.kafkamessagingexample.model.SimpleResponse;
+import org.storck.kafkamessagingexample.service.DeadlineDeserializer;
+import org.storck.kafkamessagingexample.service.QueryMetrics;
+import org.storck.kafkamessagingexample.service.QueryTracer;
+import org.storck.kafkamessagingexample.service.ResponseRouter;
+import org.storck.kafkamessagingexample.service.SimpleQuerySerde;
+import org.storck.kafkamessagingexample.service.SimpleResponseSerde;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
 
-import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_PROTOTYPE;
-
+@Slf4j
 @Configuration
 @EnableKafka
+@EnableConfigurationProperties({WireFormatProperties.class, ProducerProfileProperties.class})
 public class KafkaConfiguration {
 
     public static final String QUERY_TOPIC_NAME = "query-topic";
 
     public static final String RESULT_TOPIC_NAME = "result-topic";
 
+    public static final String MEMBERSHIP_TOPIC_NAME = "membership-topic";
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
     @Value("${spring.kafka.consumer.group-id}")
     private String kafkaConsumerGroupId;
 
-    @Bean
-    public Properties streamsProperties() {
-        Properties streamProperties = new Properties();
-        streamProperties.put(StreamsConfig.APPLICATION_ID_CONFIG, "kafka-messaging-example");
-        streamProperties.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        streamProperties.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
-        streamProperties.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, JsonSerializer.class);
-        return streamProperties;
+    @Value("${kafka-messaging-example.topics.query-partitions:1}")
+    private int queryTopicPartitions;
+
+    @Value("${kafka-messaging-example.topics.result-partitions:1}")
+    private int resultTopicPartitions;
+
+    @Value("${kafka-messaging-example.topics.replication-factor:1}")
+    private short replicationFactor;
+
+    @Value("${kafka-messaging-example.query-listener.concurrency:1}")
+    private int queryListenerConcurrency;
+
+    @Value("${kafka-messaging-example.query-listener.max-poll-records:500}")
+    private int queryListenerMaxPollRecords;
+
+    @Value("${kafka-messaging-example.result-listener.concurrency:1}")
+    private int resultListenerConcurrency;
+
+    private final SimpleQuerySerde simpleQuerySerde;
+
+    private final SimpleResponseSerde simpleResponseSerde;
+
+    private final ProducerProfileProperties producerProfileProperties;
+
+    private final QueryMetrics queryMetrics;
+
+    private final MeterRegistry meterRegistry;
+
+    public KafkaConfiguration(SimpleQuerySerde simpleQuerySerde, SimpleResponseSerde simpleResponseSerde,
+                              ProducerProfileProperties producerProfileProperties, QueryMetrics queryMetrics,
+                              MeterRegistry meterRegistry) {
+        this.simpleQuerySerde = simpleQuerySerde;
+        this.simpleResponseSerde = simpleResponseSerde;
+        this.producerProfileProperties = producerProfileProperties;
+        this.queryMetrics = queryMetrics;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Combines the bootstrap servers and the given settings with the producer profile that the template uses.
+     */
+    private Map<String, Object> producerConfig(String templateName, Map<String, Object> settings) {
+        Map<String, Object> config = new HashMap<>(producerProfileProperties.producerConfig(templateName));
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.putAll(settings);
+        return config;
+    }
+
+    /**
+     * Publishes the Kafka client's own metrics, such as request latency and consumer records lag, for every
+     * client that the factory creates.
+     */
+    private <K, V> ProducerFactory<K, V> withClientMetrics(DefaultKafkaProducerFactory<K, V> producerFactory) {
+        producerFactory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return producerFactory;
+    }
+
+    private <K, V> ConsumerFactory<K, V> withClientMetrics(DefaultKafkaConsumerFactory<K, V> consumerFactory) {
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return consumerFactory;
     }
 
     @Bean
     public ProducerFactory<String, SimpleQuery> simpleQueryProducerFactory() {
-        return new DefaultKafkaProducerFactory<>(
-                Map.of(
-                        ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
-                        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
-                        ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class));
+        return withClientMetrics(new DefaultKafkaProducerFactory<>(
+                producerConfig("simple-query", Map.of()),
+                new StringSerializer(),
+                queryMetrics.instrument(simpleQuerySerde.serializer())));
     }
 
     @Bean
@@ -71,11 +145,10 @@ public class KafkaConfiguration {
 
     @Bean
     public ProducerFactory<String, SimpleResponse> simpleResponseProducerFactory() {
-        return new DefaultKafkaProducerFactory<>(
-                Map.of(
-                        ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
-                        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
-                        ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class));
+        return withClientMetrics(new DefaultKafkaProducerFactory<>(
+                producerConfig("simple-response", Map.of()),
+                new StringSerializer(),
+                queryMetrics.instrument(simpleResponseSerde.serializer())));
     }
 
     @Bean
@@ -84,27 +157,58 @@ public class KafkaConfiguration {
         return new KafkaTemplate<>(simpleResponseProducerFactory);
     }
 
+    @Bean
+    public ProducerFactory<String, NodeHeartbeat> nodeHeartbeatProducerFactory() {
+        return withClientMetrics(new DefaultKafkaProducerFactory<>(
+                producerConfig("node-heartbeat", Map.of(
+                        ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                        ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class))));
+    }
+
+    @Bean
+    public KafkaTemplate<String, NodeHeartbeat> nodeHeartbeatKafkaTemplate(
+            ProducerFactory<String, NodeHeartbeat> nodeHeartbeatProducerFactory) {
+        return new KafkaTemplate<>(nodeHeartbeatProducerFactory);
+    }
+
     @Bean
     public ConsumerFactory<String, SimpleQuery> simpleQueryConsumerFactory() {
-        JsonDeserializer<SimpleQuery> jsonDeserializer = new JsonDeserializer<>(SimpleQuery.class);
-        jsonDeserializer.addTrustedPackages("org.storck.kafkamessagingexample.model");
-        return new DefaultKafkaConsumerFactory<>(
+        return withClientMetrics(new DefaultKafkaConsumerFactory<>(
                 Map.of(
                         ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
                         ConsumerConfig.GROUP_ID_CONFIG, kafkaConsumerGroupId,
                         ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
                         ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true,
                         ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 15000,
+                        ConsumerConfig.MAX_POLL_RECORDS_CONFIG, queryListenerMaxPollRecords,
                         ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getCanonicalName()),
                 new StringDeserializer(),
-                jsonDeserializer);
+                new ErrorHandlingDeserializer<>(
+                        new DeadlineDeserializer<>(
+                                queryMetrics.instrument(simpleQuerySerde.deserializer()), queryMetrics))));
     }
 
     @Bean
     public ConsumerFactory<String, SimpleResponse> simpleResponseConsumerFactory() {
-        JsonDeserializer<SimpleResponse> jsonDeserializer = new JsonDeserializer<>(SimpleResponse.class);
+        return withClientMetrics(new DefaultKafkaConsumerFactory<>(
+                Map.of(
+                        ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                        ConsumerConfig.GROUP_ID_CONFIG, kafkaConsumerGroupId,
+                        ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                        ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true,
+                        ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 15000,
+                        ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getCanonicalName()),
+                new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(
+                        new DeadlineDeserializer<>(
+                                queryMetrics.instrument(simpleResponseSerde.deserializer()), queryMetrics))));
+    }
+
+    @Bean
+    public ConsumerFactory<String, NodeHeartbeat> nodeHeartbeatConsumerFactory() {
+        JsonDeserializer<NodeHeartbeat> jsonDeserializer = new JsonDeserializer<>(NodeHeartbeat.class);
         jsonDeserializer.addTrustedPackages("org.storck.kafkamessagingexample.model");
-        return new DefaultKafkaConsumerFactory<>(
+        return withClientMetrics(new DefaultKafkaConsumerFactory<>(
                 Map.of(
                         ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
                         ConsumerConfig.GROUP_ID_CONFIG, kafkaConsumerGroupId,
@@ -113,13 +217,15 @@ public class KafkaConfiguration {
                         ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 15000,
                         ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getCanonicalName()),
                 new StringDeserializer(),
-                jsonDeserializer);
+                new ErrorHandlingDeserializer<>(jsonDeserializer)));
     }
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, SimpleQuery> simpleQueryKafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, SimpleQuery> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(simpleQueryConsumerFactory());
+        factory.setConcurrency(queryListenerConcurrency);
+        factory.setBatchListener(true);
         return factory;
     }
 
@@ -127,22 +233,89 @@ public class KafkaConfiguration {
     public ConcurrentKafkaListenerContainerFactory<String, SimpleResponse> simpleResponseKafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, SimpleResponse> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(simpleResponseConsumerFactory());
+        factory.setConcurrency(resultListenerConcurrency);
         return factory;
     }
 
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, NodeHeartbeat> nodeHeartbeatKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, NodeHeartbeat> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(nodeHeartbeatConsumerFactory());
+        return factory;
+    }
+
+    /**
+     * Consumes responses for the {@link ResponseRouter}: only this node's reply partition when it owns one, and
+     * otherwise the whole result topic under a group of its own.  Consumption starts from the end, since responses
+     * written before this node started cannot belong to any of its queries.  Responses routed to a waiting query are
+     * traced by the {@link QueryTracer}.  Responses that arrive after their query's deadline are deserialized to
+     * null by the {@link DeadlineDeserializer} and skipped.  A reply partition that the result topic does not have
+     * fails startup.
+     */
+    @Bean
+    public ConcurrentMessageListenerContainer<String, SimpleResponse> responseRouterListenerContainer(
+            ResponseRouter responseRouter, QueryTracer queryTracer, KafkaAdmin kafkaAdmin) {
+        int replyPartition = responseRouter.replyPartition();
+        if (replyPartition >= 0) {
+            validateReplyPartition(replyPartition, kafkaAdmin, resultTopicPartitions);
+        }
+        ConcurrentMessageListenerContainer<String, SimpleResponse> container = replyPartition < 0
+                ? simpleResponseKafkaListenerContainerFactory().createContainer(RESULT_TOPIC_NAME)
+                : simpleResponseKafkaListenerContainerFactory().createContainer(
+                        new TopicPartitionOffset(RESULT_TOPIC_NAME, replyPartition, SeekPosition.END));
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        ContainerProperties containerProperties = container.getContainerProperties();
+        containerProperties.setGroupId("result_consumer_" + UUID.randomUUID());
+        containerProperties.setKafkaConsumerProperties(consumerProperties);
+        containerProperties.setMessageListener((MessageListener<String, SimpleResponse>) responseRecord -> {
+            queryMetrics.recordListenerLag(responseRecord.topic(), responseRecord.timestamp());
+            if (responseRecord.value() != null && responseRouter.routeResponse(responseRecord.value())) {
+                queryTracer.responseReceived(responseRecord);
+            }
+        });
+        return container;
+    }
+
+    /**
+     * Checks that the result topic has the given reply partition, since responders could never write to a missing
+     * one and every query would time out.  An existing topic is checked by its actual partition count, which may
+     * differ from the configured count, and a topic that does not exist yet by the count it will be created with.
+     * The check is skipped when the broker cannot be reached, which startup otherwise tolerates.
+     *
+     * @throws IllegalStateException if the result topic has no such partition
+     */
+    static void validateReplyPartition(int replyPartition, KafkaAdmin kafkaAdmin, int configuredPartitions) {
+        int partitions;
+        try {
+            partitions = kafkaAdmin.describeTopics(RESULT_TOPIC_NAME).get(RESULT_TOPIC_NAME).partitions().size();
+        } catch (KafkaException e) {
+            if (!(NestedExceptionUtils.getRootCause(e) instanceof UnknownTopicOrPartitionException)) {
+                log.warn("Could not check reply partition {} against the partitions of {}", replyPartition,
+                        RESULT_TOPIC_NAME, e);
+                return;
+            }
+            partitions = configuredPartitions;
+        }
+        if (replyPartition >= partitions) {
+            throw new IllegalStateException("Reply partition " + replyPartition + " does not exist: "
+                    + RESULT_TOPIC_NAME + " has " + partitions + " partitions");
+        }
+    }
+
     @Bean
     public NewTopic queryTopic() {
-        return new NewTopic(QUERY_TOPIC_NAME, 1, (short) 1);
+        return new NewTopic(QUERY_TOPIC_NAME, queryTopicPartitions, replicationFactor);
     }
 
     @Bean
     public NewTopic resultTopic() {
-        return new NewTopic(RESULT_TOPIC_NAME, 1, (short) 1);
+        return new NewTopic(RESULT_TOPIC_NAME, resultTopicPartitions, replicationFactor);
     }
 
     @Bean
-    @Scope(scopeName = SCOPE_PROTOTYPE)
-    public StreamsBuilder streamsBuilder() {
-        return new StreamsBuilder();
+    public NewTopic membershipTopic() {
+        return new NewTopic(MEMBERSHIP_TOPIC_NAME, 1, replicationFactor)
+                .configs(Map.of(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT));
     }
 }
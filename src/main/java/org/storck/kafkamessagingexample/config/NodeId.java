@@ -0,0 +1,21 @@
+package org.storck.kafkamessagingexample.config;
+
+/**
+ * Identifies this node as a responder to broadcast queries, as the origin of the queries it sends, and in its
+ * heartbeats.  Injected by type, so it cannot be confused with any other string bean.
+ *
+ * @param value the node id, which is never blank
+ */
+public record NodeId(String value) {
+
+    public NodeId {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Node id must not be blank");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,149 @@
+package org.storck.kafkamessagingexample.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Named producer tuning profiles, and the profile that each Kafka template uses.  The built-in
+ * {@value #THROUGHPUT} and {@value #LATENCY} presets are defined only here.  Settings configured under
+ * {@code kafka-messaging-example.producer.profiles} override a preset's settings one by one, leaving the rest as
+ * they are, and profiles with other names are added as they are configured.  Templates with no profile use the
+ * Kafka client defaults.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka-messaging-example.producer")
+public class ProducerProfileProperties {
+
+    public static final String THROUGHPUT = "throughput";
+
+    public static final String LATENCY = "latency";
+
+    /**
+     * Batches aggressively and compresses, for bursty traffic such as response fan-in.
+     */
+    static final ProducerProfile THROUGHPUT_PRESET = ProducerProfile.builder()
+            .lingerMs(20)
+            .batchSize(128 * 1024)
+            .compressionType("lz4")
+            .idempotence(true)
+            .acks("all")
+            .build();
+
+    /**
+     * Sends immediately and uncompressed, for small latency-sensitive records such as query broadcasts.
+     */
+    static final ProducerProfile LATENCY_PRESET = ProducerProfile.builder()
+            .lingerMs(0)
+            .batchSize(16 * 1024)
+            .compressionType("none")
+            .idempotence(false)
+            .acks("1")
+            .build();
+
+    /**
+     * Profiles keyed by name, in addition to the built-in presets, whose settings override those of the preset with
+     * the same name.
+     */
+    private Map<String, ProducerProfile> profiles = new HashMap<>();
+
+    /**
+     * Profile names keyed by template name.
+     */
+    private Map<String, String> templates = new HashMap<>();
+
+    /**
+     * Returns the producer configuration for the profile that the named template uses.
+     *
+     * @param templateName the name of the template, such as {@code simple-query}
+     * @return producer configuration entries, empty when the template has no profile
+     */
+    public Map<String, Object> producerConfig(String templateName) {
+        String profileName = templates.get(templateName);
+        if (profileName == null) {
+            return Map.of();
+        }
+        return profile(profileName).toProducerConfig();
+    }
+
+    /**
+     * Returns the profile with the given name: the built-in preset with any configured settings applied over it, or
+     * the configured profile when there is no such preset.
+     *
+     * @throws IllegalArgumentException if no profile has the given name
+     */
+    public ProducerProfile profile(String profileName) {
+        ProducerProfile configured = profiles.get(profileName);
+        ProducerProfile preset = switch (profileName) {
+            case THROUGHPUT -> THROUGHPUT_PRESET;
+            case LATENCY -> LATENCY_PRESET;
+            default -> null;
+        };
+        if (preset == null) {
+            if (configured == null) {
+                throw new IllegalArgumentException("Unknown producer profile: " + profileName);
+            }
+            return configured;
+        }
+        return configured == null ? preset : preset.overriddenBy(configured);
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ProducerProfile {
+
+        private Integer lingerMs;
+
+        private Integer batchSize;
+
+        private String compressionType;
+
+        private Boolean idempotence;
+
+        private String acks;
+
+        /**
+         * Returns a copy of this profile with every setting that is set in the given profile replaced by its value.
+         */
+        public ProducerProfile overriddenBy(ProducerProfile overrides) {
+            return ProducerProfile.builder()
+                    .lingerMs(overrides.lingerMs != null ? overrides.lingerMs : lingerMs)
+                    .batchSize(overrides.batchSize != null ? overrides.batchSize : batchSize)
+                    .compressionType(overrides.compressionType != null ? overrides.compressionType : compressionType)
+                    .idempotence(overrides.idempotence != null ? overrides.idempotence : idempotence)
+                    .acks(overrides.acks != null ? overrides.acks : acks)
+                    .build();
+        }
+
+        /**
+         * Returns the producer configuration entries for the settings in this profile that are set.
+         */
+        public Map<String, Object> toProducerConfig() {
+            Map<String, Object> config = new HashMap<>();
+            if (lingerMs != null) {
+                config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+            }
+            if (batchSize != null) {
+                config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+            }
+            if (compressionType != null) {
+                config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+            }
+            if (idempotence != null) {
+                config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotence);
+            }
+            if (acks != null) {
+                config.put(ProducerConfig.ACKS_CONFIG, acks);
+            }
+            return config;
+        }
+    }
+}
@@ -2,6 +2,10 @@ package org.storck.kafkamessagingexample.config;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.ssl.SslBundles;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
@@ -19,11 +23,20 @@ import org.springframework.security.web.authentication.preauth.PreAuthenticatedA
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.filter.CorsFilter;
+import org.storck.kafkamessagingexample.auth.AuthRequestFactories;
+import org.storck.kafkamessagingexample.auth.AuthorizationClient;
+import org.storck.kafkamessagingexample.auth.CircuitBreaker;
 import org.storck.kafkamessagingexample.auth.ClientCertAuthFilter;
 import org.storck.kafkamessagingexample.auth.ExternalAuthenticationUserDetailsService;
+import org.storck.kafkamessagingexample.auth.LocalAuthorizationClient;
+import org.storck.kafkamessagingexample.auth.RestAuthorizationClient;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.Executor;
 
 @Configuration
 @EnableMethodSecurity
+@EnableConfigurationProperties(AuthProperties.class)
 public class SecurityConfig {
 
     @Bean
@@ -31,10 +44,14 @@ public class SecurityConfig {
         return new ObjectMapper(new JsonFactory());
     }
 
+    /**
+     * Client for the authorization service, on a pooled or HTTP/2 connection depending on the HTTP settings.
+     */
     @Bean
-    public RestTemplate restTemplate(SslBundles sslBundles) {
+    public RestTemplate restTemplate(SslBundles sslBundles, AuthProperties authProperties) {
+        SSLContext sslContext = sslBundles.getBundle("server-ssl-bundle").createSslContext();
         return new RestTemplateBuilder()
-                .setSslBundle(sslBundles.getBundle("server-ssl-bundle"))
+                .requestFactory(() -> AuthRequestFactories.create(authProperties.getHttp(), sslContext))
                 .build();
     }
 
@@ -43,10 +60,26 @@ public class SecurityConfig {
         return authenticationConfiguration.getAuthenticationManager();
     }
 
+    /**
+     * Client for the external authorization service, or a local stand-in when no service URL is configured.
+     */
+    @Bean
+    public AuthorizationClient authorizationClient(AuthProperties authProperties, RestTemplate restTemplate,
+                                                   ObjectMapper objectMapper) {
+        if (authProperties.getServiceUrl().isBlank()) {
+            return new LocalAuthorizationClient(authProperties.getLocalAuthorities());
+        }
+        return new RestAuthorizationClient(authProperties.getServiceUrl(), restTemplate, objectMapper);
+    }
+
     @Bean
     public AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> userDetailsService(
-            RestTemplate restTemplate, ObjectMapper objectMapper) {
-        return new ExternalAuthenticationUserDetailsService(restTemplate, objectMapper);
+            AuthorizationClient authorizationClient, @Qualifier("authExecutor") Executor authExecutor,
+            AuthProperties authProperties) {
+        AuthProperties.CircuitBreaker circuitBreaker = authProperties.getCircuitBreaker();
+        return new ExternalAuthenticationUserDetailsService(authorizationClient, authExecutor,
+                authProperties.getUserDetailsCache(),
+                new CircuitBreaker(circuitBreaker.getFailureThreshold(), circuitBreaker.getOpenDuration()));
     }
 
     @Bean
@@ -58,8 +91,10 @@ public class SecurityConfig {
     }
 
     @Bean
-    public ClientCertAuthFilter clientCertAuthFilter(AuthenticationManager authenticationManager) {
-        ClientCertAuthFilter filter = new ClientCertAuthFilter();
+    public ClientCertAuthFilter clientCertAuthFilter(
+            AuthenticationManager authenticationManager, MeterRegistry meterRegistry,
+            @Value("${kafka-messaging-example.auth.client-cert-cache.max-size:1000}") long clientCertCacheMaxSize) {
+        ClientCertAuthFilter filter = new ClientCertAuthFilter(clientCertCacheMaxSize, meterRegistry);
         filter.setAuthenticationManager(authenticationManager);
         return filter;
     }
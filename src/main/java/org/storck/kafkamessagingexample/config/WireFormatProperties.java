@@ -0,0 +1,30 @@
+package org.storck.kafkamessagingexample.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.storck.kafkamessagingexample.service.WireFormat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Selects the {@link WireFormat} that record values are written in, per topic.
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka-messaging-example.wire-format")
+public class WireFormatProperties {
+
+    /**
+     * Format for topics that have no format of their own.
+     */
+    private WireFormat defaultFormat = WireFormat.JSON;
+
+    /**
+     * Formats keyed by topic name.
+     */
+    private Map<String, WireFormat> topics = new HashMap<>();
+
+    public WireFormat forTopic(String topic) {
+        return topics.getOrDefault(topic, defaultFormat);
+    }
+}
@@ -0,0 +1,43 @@
+package org.storck.kafkamessagingexample.handler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Answers one type of query on behalf of this node, both for local processing and in response to broadcasts from
+ * other nodes.  Every {@code QueryHandler} bean is registered with the {@link QueryProcessor} under its
+ * {@link #type()}, and queries are dispatched to it by the type they carry.  Implementations should do any work
+ * that does not depend on the query once, up front, so that {@link #handle(String)} only does the per-query work.
+ */
+public interface QueryHandler {
+
+    /**
+     * The query type that this handler answers, unique among handlers.
+     */
+    String type();
+
+    /**
+     * Produces the results for a query.  Called on an executor thread, possibly concurrently with other queries.
+     *
+     * @param query the query text
+     * @return the results, which must not be modified afterward
+     */
+    List<String> handle(String query);
+
+    /**
+     * Declares whether the results for a query text can be reused for later queries with the same text.  Cacheable
+     * results are memoized by the {@link QueryProcessor}.
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * How long the handler may take before its results are abandoned.  When empty, the processor's default timeout
+     * applies.
+     */
+    default Optional<Duration> timeout() {
+        return Optional.empty();
+    }
+}
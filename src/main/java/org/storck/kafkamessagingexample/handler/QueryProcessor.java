@@ -0,0 +1,133 @@
+package org.storck.kafkamessagingexample.handler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Dispatches queries to the {@link QueryHandler} registered for their type, running each handler on a caller-chosen
+ * executor under the handler's timeout, and memoizing the results of handlers that declare them cacheable.
+ */
+@Slf4j
+@Service
+public class QueryProcessor {
+
+    private final Map<String, RegisteredHandler> handlers = new HashMap<>();
+
+    private final String defaultType;
+
+    public QueryProcessor(List<QueryHandler> queryHandlers,
+                          @Value("${kafka-messaging-example.handlers.default-type:" + SystemInfoQueryHandler.TYPE + "}")
+                          String defaultType,
+                          @Value("${kafka-messaging-example.handlers.default-timeout:4s}") Duration defaultTimeout,
+                          @Value("${kafka-messaging-example.handlers.memo.max-size:1000}") long memoMaxSize,
+                          @Value("${kafka-messaging-example.handlers.memo.ttl:60s}") Duration memoTtl) {
+        this.defaultType = defaultType;
+        for (QueryHandler queryHandler : queryHandlers) {
+            Cache<String, List<String>> memoizedResults = queryHandler.isCacheable()
+                    ? Caffeine.newBuilder().maximumSize(memoMaxSize).expireAfterWrite(memoTtl).build()
+                    : null;
+            RegisteredHandler previous = handlers.put(queryHandler.type(),
+                    new RegisteredHandler(queryHandler, memoizedResults,
+                            queryHandler.timeout().orElse(defaultTimeout)));
+            if (previous != null) {
+                throw new IllegalStateException("More than one query handler for type: " + queryHandler.type());
+            }
+        }
+    }
+
+    /**
+     * Returns true if a handler is registered for the query type, where a null type means the default type.
+     */
+    public boolean supports(String type) {
+        return handlers.containsKey(type == null ? defaultType : type);
+    }
+
+    /**
+     * Produces the results for a query on the given executor.  The handler's timeout runs from when the handler
+     * starts, so time spent queued on the executor does not count against it.  A handler that exceeds its timeout
+     * fails the future with a {@link TimeoutException}; its work is abandoned, not interrupted, and it keeps its
+     * executor thread until it returns.
+     *
+     * @param type the query type, or null for the default type
+     * @param query the query text
+     * @param executor the executor to run the handler on
+     * @return a future for the results, which must not be modified
+     * @throws IllegalArgumentException if no handler is registered for the type
+     */
+    public CompletableFuture<List<String>> processAsync(String type, String query, Executor executor) {
+        String resolvedType = type == null ? defaultType : type;
+        RegisteredHandler handler = handlers.get(resolvedType);
+        if (handler == null) {
+            throw new IllegalArgumentException("No query handler for type: " + resolvedType);
+        }
+        CompletableFuture<List<String>> resultsFuture = new CompletableFuture<>();
+        executor.execute(() -> {
+            resultsFuture.orTimeout(handler.timeout().toMillis(), TimeUnit.MILLISECONDS);
+            try {
+                resultsFuture.complete(handler.process(query));
+            } catch (RuntimeException e) {
+                resultsFuture.completeExceptionally(e);
+            }
+        });
+        return resultsFuture.whenComplete((results, ex) -> {
+            if (isTimeout(ex)) {
+                log.warn("Query handler for type {} timed out after {}", resolvedType, handler.timeout());
+            }
+        });
+    }
+
+    /**
+     * Returns true if a query failed because its handler exceeded its timeout.
+     */
+    public static boolean isTimeout(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+        return cause instanceof TimeoutException;
+    }
+
+    /**
+     * Produces the results for each sub-query of a batch on the given executor, running the sub-queries
+     * concurrently under the handler's timeout, and completes once all of them have.  The future fails if any
+     * sub-query fails or times out.
+     *
+     * @param type the query type of every sub-query, or null for the default type
+     * @param queries the sub-query texts
+     * @param executor the executor to run the handler on
+     * @return a future for the results of each sub-query, in the order of the batch
+     * @throws IllegalArgumentException if no handler is registered for the type
+     */
+    public CompletableFuture<List<List<String>>> processBatchAsync(String type, List<String> queries,
+                                                                   Executor executor) {
+        List<CompletableFuture<List<String>>> resultFutures = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            resultFutures.add(processAsync(type, query, executor));
+        }
+        return CompletableFuture.allOf(resultFutures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> resultFutures.stream().map(CompletableFuture::join).toList());
+    }
+
+    private record RegisteredHandler(QueryHandler queryHandler, Cache<String, List<String>> memoizedResults,
+                                     Duration timeout) {
+
+        List<String> process(String query) {
+            log.debug("Processing {} query: {}", queryHandler.type(), query);
+            if (memoizedResults == null) {
+                return queryHandler.handle(query);
+            }
+            return memoizedResults.get(query, queryHandler::handle);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.storck.kafkamessagingexample.handler;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Answers every query with the query text and this node's operating system and user details.  The system details
+ * cannot change while the node runs, so they are looked up once and only the query line is built per query.  That is
+ * cheaper than a memo lookup, so the handler does not declare itself cacheable.
+ */
+@Component
+public class SystemInfoQueryHandler implements QueryHandler {
+
+    public static final String TYPE = "system-info";
+
+    private static final String SEPARATOR = "=======================================================";
+
+    private static final int QUERY_LINE = 1;
+
+    private final String[] template;
+
+    public SystemInfoQueryHandler() {
+        this.template = new String[] {
+                SEPARATOR,
+                null,
+                "OS Name: " + System.getProperty("os.name"),
+                "OS Version: " + System.getProperty("os.version"),
+                "OS Architecture: " + System.getProperty("os.arch"),
+                "User Name: " + System.getProperty("user.name"),
+                "User Home: " + System.getProperty("user.home"),
+                SEPARATOR
+        };
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public List<String> handle(String query) {
+        String[] results = template.clone();
+        results[QUERY_LINE] = "query: " + query;
+        return List.of(results);
+    }
+}
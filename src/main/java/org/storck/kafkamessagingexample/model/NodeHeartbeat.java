@@ -0,0 +1,17 @@
+package org.storck.kafkamessagingexample.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeHeartbeat {
+
+    private String nodeId;
+
+    private long timestamp;
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -14,4 +16,11 @@ public class SimpleQuery {
     private String id;
 
     private String query;
+
+    private String type;
+
+    /**
+     * The sub-queries of a batch query, answered together in one response, or null for a single query.
+     */
+    private List<String> batch;
 }
@@ -15,5 +15,12 @@ public class SimpleResponse {
 
     private String id;
 
+    private String responderId;
+
     private List<String> results;
+
+    /**
+     * The results for each sub-query of a batch query, in the order of the batch, or null for a single query.
+     */
+    private List<List<String>> batchResults;
 }
@@ -0,0 +1,194 @@
+package org.storck.kafkamessagingexample.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Primitives for the {@link WireFormat#BINARY} encoding.  A record value starts with {@link #MAGIC}, which can never
+ * begin a JSON document, followed by a version byte and the fields in declaration order.  Lengths and counts are
+ * unsigned varints holding the value plus one, so that zero can mark a null string or list.
+ * <p>
+ * Versions are append-only: each version adds fields after those of the version before it and never changes or
+ * removes one.  A reader therefore accepts values written in a newer version than it knows, reads the fields it
+ * knows, and ignores the bytes that follow them.
+ */
+final class BinaryEncoding {
+
+    static final byte MAGIC = 0x00;
+
+    private BinaryEncoding() {
+    }
+
+    /**
+     * Returns true if the data was written in the binary format rather than as JSON.
+     */
+    static boolean isBinary(byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    static final class Writer {
+
+        private byte[] buffer;
+
+        private int position;
+
+        Writer(int initialCapacity) {
+            this.buffer = new byte[Math.max(initialCapacity, 16)];
+        }
+
+        Writer header(byte version) {
+            ensureCapacity(2);
+            buffer[position++] = MAGIC;
+            buffer[position++] = version;
+            return this;
+        }
+
+        Writer writeString(String value) {
+            if (value == null) {
+                return writeVarint(0);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+            return this;
+        }
+
+        Writer writeStrings(List<String> values) {
+            if (values == null) {
+                return writeVarint(0);
+            }
+            writeVarint(values.size() + 1);
+            for (String value : values) {
+                writeString(value);
+            }
+            return this;
+        }
+
+        Writer writeStringLists(List<List<String>> values) {
+            if (values == null) {
+                return writeVarint(0);
+            }
+            writeVarint(values.size() + 1);
+            for (List<String> value : values) {
+                writeStrings(value);
+            }
+            return this;
+        }
+
+        Writer writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (position + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+            }
+        }
+    }
+
+    static final class Reader {
+
+        private final byte[] data;
+
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Consumes the magic byte and returns the version.  A version newer than this node knows is returned as is;
+         * its fields start with those of the versions this node knows, and the rest are left unread.
+         */
+        byte header() {
+            if (!isBinary(data) || data.length < 2) {
+                throw new IllegalStateException("Not a binary encoded record value");
+            }
+            byte version = data[1];
+            if (version < 1) {
+                throw new IllegalStateException("Unsupported binary wire format version: " + version);
+            }
+            position = 2;
+            return version;
+        }
+
+        String readString() {
+            int length = readLength() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        List<String> readStrings() {
+            int size = readLength() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        List<List<String>> readStringLists() {
+            int size = readLength() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<List<String>> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readStrings());
+            }
+            return values;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 63) {
+                    throw new IllegalStateException("Malformed varint in binary record value");
+                }
+                if (position >= data.length) {
+                    throw new IllegalStateException("Truncated binary record value");
+                }
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        /**
+         * Reads a length or count, failing if it is larger than the bytes that remain could hold, since every byte
+         * of a string and every element of a list takes at least one byte.  This keeps a corrupt value from
+         * allocating more than its own size.
+         */
+        private int readLength() {
+            long length = readVarint();
+            if (length < 0 || length - 1 > data.length - position) {
+                throw new IllegalStateException("Length exceeds the remaining bytes of the binary record value");
+            }
+            return (int) length;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.storck.kafkamessagingexample.service;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides when a broadcast query has heard from enough responders to complete before its timeout.  The timeout
+ * remains the upper bound on how long a query waits, regardless of the policy.
+ */
+public interface CompletionPolicy {
+
+    /**
+     * Evaluates the policy against the responders heard from so far.
+     *
+     * @param responders the ids of the nodes that have responded to the query
+     * @return true if the query can complete without waiting for more responses
+     */
+    boolean isSatisfied(Set<String> responders);
+
+    /**
+     * Waits for the full timeout.
+     */
+    static CompletionPolicy timeout() {
+        return new Timeout();
+    }
+
+    /**
+     * Completes as soon as any responder has replied.
+     */
+    static CompletionPolicy first() {
+        return new ResponseCount(1);
+    }
+
+    /**
+     * Completes once the given number of responders have replied.
+     */
+    static CompletionPolicy responses(int count) {
+        return new ResponseCount(count);
+    }
+
+    /**
+     * Completes once every one of the given responders has replied.
+     */
+    static CompletionPolicy responders(Set<String> responderIds) {
+        return new KnownResponders(Set.copyOf(responderIds));
+    }
+
+    /**
+     * Completes once the given fraction of the expected responders has replied.  When no responders are expected,
+     * the quorum is never reached and the query waits for the full timeout, so that an empty view of the cluster,
+     * such as before any heartbeat has arrived, does not let an arbitrary first response complete it.
+     */
+    static CompletionPolicy quorum(double fraction, int expectedResponders) {
+        return new Quorum(fraction, expectedResponders);
+    }
+
+    /**
+     * Completes once every responder that is currently live has replied.  Responders that stop heartbeating while
+     * the query waits are no longer waited for.  While no responder is known to be live, the policy is not
+     * satisfied, and the query waits for the full timeout unless a responder becomes live and replies.
+     */
+    static CompletionPolicy allLive(ResponderMembership membership) {
+        return new AllLiveResponders(membership);
+    }
+
+    /**
+     * Completes as soon as any of the given policies is satisfied.  With no policies, waits for the full timeout.
+     */
+    static CompletionPolicy anyOf(List<CompletionPolicy> policies) {
+        return policies.isEmpty() ? timeout() : new AnyOf(List.copyOf(policies));
+    }
+
+    record Timeout() implements CompletionPolicy {
+
+        @Override
+        public boolean isSatisfied(Set<String> responders) {
+            return false;
+        }
+    }
+
+    record ResponseCount(int count) implements CompletionPolicy {
+
+        @Override
+        public boolean isSatisfied(Set<String> responders) {
+            return responders.size() >= count;
+        }
+    }
+
+    record KnownResponders(Set<String> responderIds) implements CompletionPolicy {
+
+        @Override
+        public boolean isSatisfied(Set<String> responders) {
+            return responders.containsAll(responderIds);
+        }
+    }
+
+    record Quorum(double fraction, int expectedResponders) implements CompletionPolicy {
+
+        public Quorum {
+            if (fraction <= 0 || fraction > 1) {
+                throw new IllegalArgumentException("Quorum fraction must be in (0, 1]: " + fraction);
+            }
+        }
+
+        @Override
+        public boolean isSatisfied(Set<String> responders) {
+            return expectedResponders > 0 && responders.size() >= Math.ceil(fraction * expectedResponders);
+        }
+    }
+
+    record AllLiveResponders(ResponderMembership membership) implements CompletionPolicy {
+
+        @Override
+        public boolean isSatisfied(Set<String> responders) {
+            Set<String> liveResponders = membership.liveResponders();
+            return !liveResponders.isEmpty() && responders.containsAll(liveResponders);
+        }
+    }
+
+    record AnyOf(List<CompletionPolicy> policies) implements CompletionPolicy {
+
+        @Override
+        public boolean isSatisfied(Set<String> responders) {
+            return policies.stream().anyMatch(policy -> policy.isSatisfied(responders));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Wraps a deserializer so that records whose {@link QueryHeaders#DEADLINE} has passed are counted and deserialized
+ * to null without decoding their values.  Expired queries replayed from the query topic, and responses that arrive
+ * after their query stopped waiting, then cost only a header lookup.  Listeners skip records with a null value.
+ */
+public class DeadlineDeserializer<T> implements Deserializer<T> {
+
+    private final Deserializer<T> delegate;
+
+    private final QueryMetrics queryMetrics;
+
+    public DeadlineDeserializer(Deserializer<T> delegate, QueryMetrics queryMetrics) {
+        this.delegate = delegate;
+        this.queryMetrics = queryMetrics;
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return delegate.deserialize(topic, data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (QueryDeadlines.hasPassed(headers, System.currentTimeMillis())) {
+            queryMetrics.recordExpired(topic);
+            return null;
+        }
+        return delegate.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
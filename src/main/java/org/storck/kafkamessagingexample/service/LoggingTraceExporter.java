@@ -0,0 +1,31 @@
+package org.storck.kafkamessagingexample.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs each {@link ResponseTrace} with its latency breakdown to the {@code query-trace} logger, from which a local
+ * collector can tail them.  Traces are logged at debug level, since every response is traced, so the logger has to
+ * be set to debug as well as the exporter enabled.
+ */
+@Slf4j(topic = "query-trace")
+@Component
+@ConditionalOnProperty(name = "kafka-messaging-example.tracing.log", havingValue = "true")
+public class LoggingTraceExporter implements TraceExporter {
+
+    @Override
+    public void export(ResponseTrace responseTrace) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        log.debug("trace={} query={} responder={} dispatchMs={} processingMs={} returnMs={} totalMs={}",
+                responseTrace.traceId(),
+                responseTrace.queryId(),
+                responseTrace.responderId(),
+                responseTrace.dispatch().toMillis(),
+                responseTrace.processing().toMillis(),
+                responseTrace.returnTrip().toMillis(),
+                responseTrace.total().toMillis());
+    }
+}
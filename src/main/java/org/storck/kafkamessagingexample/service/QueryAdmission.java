@@ -0,0 +1,285 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many broadcast queries this node has in flight.  Queries beyond the limit wait in a bounded FIFO
+ * queue, each for no longer than the queue timeout, and are rejected with a {@link QueryRejectedException} when the
+ * queue is full or their wait runs out.  Nothing blocks: waiting queries are futures that complete when a slot
+ * frees up.  A slot is usually freed on a Kafka listener or timer thread, so a waiting query is started on the query
+ * executor rather than on the thread that freed its slot.
+ * <p>
+ * When adaptive, the limit follows observed query latency, in the manner of a gradient concurrency limiter.  It
+ * shrinks as latency rises above the lowest recently seen, which signals queueing in the brokers or on responders,
+ * and grows while latency stays near it, within the configured minimum and maximum.  Queries that wait out a fixed
+ * timeout take about as long under any load, so their latency says nothing about queueing: they neither adapt the
+ * limit nor are held to it, and are admitted up to the maximum instead.
+ * <p>
+ * Admission is off unless enabled.  Every query holds its slot for as long as it waits for responses, which is the
+ * full timeout under the default policy, so a node admits at most max-concurrency divided by the timeout queries
+ * per second once it is on.
+ */
+@Service
+public class QueryAdmission {
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final int MIN_LATENCY_RESET_SAMPLES = 1000;
+
+    private final boolean enabled;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final int maxQueued;
+
+    private final Duration queueTimeout;
+
+    private final boolean adaptive;
+
+    private final Executor handoffExecutor;
+
+    private final LongSupplier nanoTime;
+
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+
+    private final Counter queueFullCounter;
+
+    private final Counter queueTimeoutCounter;
+
+    private double limit;
+
+    private int inFlight;
+
+    private long minLatencyNanos = Long.MAX_VALUE;
+
+    private int samplesSinceMinLatencyReset;
+
+    @Autowired
+    public QueryAdmission(@Value("${kafka-messaging-example.admission.enabled:false}") boolean enabled,
+                          @Value("${kafka-messaging-example.admission.min-concurrency:4}") int minLimit,
+                          @Value("${kafka-messaging-example.admission.max-concurrency:64}") int maxLimit,
+                          @Value("${kafka-messaging-example.admission.max-queued:256}") int maxQueued,
+                          @Value("${kafka-messaging-example.admission.queue-timeout:1s}") Duration queueTimeout,
+                          @Value("${kafka-messaging-example.admission.adaptive:true}") boolean adaptive,
+                          @Qualifier("queryExecutor") Executor handoffExecutor,
+                          MeterRegistry meterRegistry) {
+        this(enabled, minLimit, maxLimit, maxQueued, queueTimeout, adaptive, handoffExecutor, meterRegistry,
+                System::nanoTime);
+    }
+
+    QueryAdmission(boolean enabled, int minLimit, int maxLimit, int maxQueued, Duration queueTimeout,
+                   boolean adaptive, Executor handoffExecutor, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Admission concurrency must satisfy 1 <= min <= max: "
+                    + minLimit + ", " + maxLimit);
+        }
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.queueTimeout = queueTimeout;
+        this.adaptive = adaptive;
+        this.handoffExecutor = handoffExecutor;
+        this.nanoTime = nanoTime;
+        this.limit = maxLimit;
+        Gauge.builder("query.admission.limit", this, QueryAdmission::limit)
+                .description("Broadcast queries this node currently admits at once")
+                .register(meterRegistry);
+        Gauge.builder("query.admission.in-flight", this, QueryAdmission::inFlight)
+                .description("Broadcast queries admitted and not yet complete")
+                .register(meterRegistry);
+        Gauge.builder("query.admission.queued", this, QueryAdmission::queued)
+                .description("Broadcast queries waiting to be admitted")
+                .register(meterRegistry);
+        this.queueFullCounter = rejectedCounter(meterRegistry, QueryRejectedException.Reason.QUEUE_FULL);
+        this.queueTimeoutCounter = rejectedCounter(meterRegistry, QueryRejectedException.Reason.QUEUE_TIMEOUT);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, QueryRejectedException.Reason reason) {
+        return Counter.builder("query.admission.rejected")
+                .description("Broadcast queries turned away by admission control")
+                .tag("reason", reason.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the query once it is admitted, and frees its slot when the query completes.  A query admitted right away
+     * starts on the calling thread, and one that had to wait starts on the query executor.
+     *
+     * @param completionPolicy the policy of the query, which decides whether it is held to the adaptive limit
+     * @param query starts the query and returns a future for its results
+     * @return a future for the query results, failed with a {@link QueryRejectedException} if it was not admitted
+     */
+    public <T> CompletableFuture<T> admit(CompletionPolicy completionPolicy, Supplier<CompletableFuture<T>> query) {
+        if (!enabled) {
+            return query.get();
+        }
+        CompletableFuture<Permit> admission = acquire(completionPolicy instanceof CompletionPolicy.Timeout);
+        if (admission.isDone()) {
+            return admission.thenCompose(permit -> start(permit, query));
+        }
+        CompletableFuture<T> results = new CompletableFuture<>();
+        admission.whenComplete((permit, ex) -> {
+            if (ex != null) {
+                results.completeExceptionally(ex);
+                return;
+            }
+            try {
+                handoffExecutor.execute(() -> start(permit, query).whenComplete((value, queryEx) -> {
+                    if (queryEx == null) {
+                        results.complete(value);
+                    } else {
+                        results.completeExceptionally(queryEx);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                permit.release(false);
+                results.completeExceptionally(e);
+            }
+        });
+        return results;
+    }
+
+    private <T> CompletableFuture<T> start(Permit permit, Supplier<CompletableFuture<T>> query) {
+        CompletableFuture<T> results;
+        try {
+            results = query.get();
+        } catch (RuntimeException e) {
+            permit.release(false);
+            return CompletableFuture.failedFuture(e);
+        }
+        return results.whenComplete((ignored, ex) -> permit.release(ex == null));
+    }
+
+    private CompletableFuture<Permit> acquire(boolean fixedLatency) {
+        Waiter waiter = new Waiter(new CompletableFuture<>(), fixedLatency);
+        CompletableFuture<Permit> admission = waiter.admission();
+        synchronized (this) {
+            if (waiting.isEmpty() && inFlight < capacity(fixedLatency)) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(nanoTime.getAsLong(), fixedLatency));
+            }
+            if (waiting.size() >= maxQueued) {
+                queueFullCounter.increment();
+                return CompletableFuture.failedFuture(new QueryRejectedException(
+                        QueryRejectedException.Reason.QUEUE_FULL, "Too many queries are waiting to be admitted"));
+            }
+            waiting.addLast(waiter);
+        }
+        return admission
+                .orTimeout(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(ex -> {
+                    Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                    if (!(cause instanceof TimeoutException)) {
+                        return CompletableFuture.failedFuture(ex);
+                    }
+                    synchronized (this) {
+                        waiting.remove(waiter);
+                    }
+                    queueTimeoutCounter.increment();
+                    return CompletableFuture.failedFuture(new QueryRejectedException(
+                            QueryRejectedException.Reason.QUEUE_TIMEOUT,
+                            "Query was not admitted within " + queueTimeout));
+                });
+    }
+
+    /**
+     * The number of queries in flight below which a query is admitted: the adaptive limit, or the maximum for a query
+     * that waits out a fixed timeout.
+     */
+    private int capacity(boolean fixedLatency) {
+        return fixedLatency ? maxLimit : (int) limit;
+    }
+
+    /**
+     * Frees a slot, adapts the limit to the query's latency, and admits waiting queries while there is room.
+     */
+    private void release(long latencyNanos, boolean adaptsLimit) {
+        synchronized (this) {
+            inFlight--;
+            if (adaptive && adaptsLimit) {
+                adaptLimit(latencyNanos);
+            }
+        }
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                if (waiting.isEmpty() || inFlight >= capacity(waiting.peekFirst().fixedLatency())) {
+                    return;
+                }
+                next = waiting.pollFirst();
+                inFlight++;
+            }
+            if (!next.admission().complete(new Permit(nanoTime.getAsLong(), next.fixedLatency()))) {
+                // The query timed out in the queue before it could be admitted, so its slot goes to the next one
+                synchronized (this) {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    private void adaptLimit(long latencyNanos) {
+        if (++samplesSinceMinLatencyReset >= MIN_LATENCY_RESET_SAMPLES) {
+            minLatencyNanos = latencyNanos;
+            samplesSinceMinLatencyReset = 0;
+        }
+        minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+        double gradient = Math.max(0.5, Math.min(1.0, LATENCY_TOLERANCE * minLatencyNanos / latencyNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    synchronized double limit() {
+        return limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return waiting.size();
+    }
+
+    private record Waiter(CompletableFuture<Permit> admission, boolean fixedLatency) {
+    }
+
+    private final class Permit {
+
+        private final long startNanos;
+
+        private final boolean fixedLatency;
+
+        private Permit(long startNanos, boolean fixedLatency) {
+            this.startNanos = startNanos;
+            this.fixedLatency = fixedLatency;
+        }
+
+        void release(boolean succeeded) {
+            QueryAdmission.this.release(nanoTime.getAsLong() - startNanos, succeeded && !fixedLatency);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes the {@link QueryHeaders#DEADLINE} header, the epoch millisecond time after which the node that
+ * broadcast a query has stopped waiting for responses to it.  Deadlines are absolute, so they compare the clocks of
+ * different nodes, which are assumed to be kept in sync.
+ */
+final class QueryDeadlines {
+
+    private QueryDeadlines() {
+    }
+
+    static void set(Headers headers, long deadline) {
+        headers.add(QueryHeaders.DEADLINE, ByteBuffer.allocate(Long.BYTES).putLong(deadline).array());
+    }
+
+    /**
+     * Returns true if the record carries a deadline, whether or not it has passed.
+     */
+    static boolean isSet(Headers headers) {
+        Header deadline = headers.lastHeader(QueryHeaders.DEADLINE);
+        return deadline != null && deadline.value() != null && deadline.value().length == Long.BYTES;
+    }
+
+    /**
+     * Returns true if the record carries a deadline that is earlier than the given time.  Records without a
+     * deadline never expire.
+     */
+    static boolean hasPassed(Headers headers, long now) {
+        return isSet(headers) && ByteBuffer.wrap(headers.lastHeader(QueryHeaders.DEADLINE).value()).getLong() < now;
+    }
+
+    /**
+     * Copies the deadline of a query, if it has one, to the headers of a response to it.
+     */
+    static void copy(Headers queryHeaders, Headers responseHeaders) {
+        if (isSet(queryHeaders)) {
+            responseHeaders.add(queryHeaders.lastHeader(QueryHeaders.DEADLINE));
+        }
+    }
+}
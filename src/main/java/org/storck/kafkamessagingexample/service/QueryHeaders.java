@@ -0,0 +1,46 @@
+package org.storck.kafkamessagingexample.service;
+
+/**
+ * Names of the Kafka record headers that queries and responses carry alongside their values.
+ */
+public final class QueryHeaders {
+
+    /**
+     * The node id of the node that broadcast a query, as UTF-8 bytes.
+     */
+    public static final String ORIGIN_NODE = "kms_originNode";
+
+    /**
+     * The trace id shared by a query and its responses, as UTF-8 bytes.
+     */
+    public static final String TRACE_ID = "kms_traceId";
+
+    /**
+     * When the originating node sent a query, as an 8-byte epoch millisecond timestamp.  Responses echo it back.
+     */
+    public static final String SENT_AT = "kms_sentAt";
+
+    /**
+     * The node id of the node that answered a query, as UTF-8 bytes.
+     */
+    public static final String RESPONDER_ID = "kms_responderId";
+
+    /**
+     * When a responder received a query, as an 8-byte epoch millisecond timestamp.
+     */
+    public static final String RECEIVED_AT = "kms_receivedAt";
+
+    /**
+     * When a responder sent its response, as an 8-byte epoch millisecond timestamp.
+     */
+    public static final String RESPONDED_AT = "kms_respondedAt";
+
+    /**
+     * When the originating node stops waiting for responses to a query, as an 8-byte epoch millisecond timestamp.
+     * Responses echo it back.
+     */
+    public static final String DEADLINE = "kms_deadline";
+
+    private QueryHeaders() {
+    }
+}
@@ -0,0 +1,208 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.QUERY_TOPIC_NAME;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
+
+/**
+ * Meters for the broadcast query pipeline, tagged by the topic they relate to and, where there is one, the outcome.
+ * They are published through the actuator {@code metrics} endpoint.
+ */
+@Service
+public class QueryMetrics {
+
+    private static final String SUCCESS = "success";
+
+    private static final String FAILURE = "failure";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Meter.MeterProvider<Timer> sendTimers;
+
+    private final Meter.MeterProvider<Timer> processingTimers;
+
+    private final Timer remoteResponseTimer;
+
+    private final Meter.MeterProvider<DistributionSummary> responseCounts;
+
+    private final Counter timeoutCounter;
+
+    private final Counter droppedResponseCounter;
+
+    private final Meter.MeterProvider<Timer> listenerLagTimers;
+
+    private final Counter selfSuppressedCounter;
+
+    private final Counter shedCounter;
+
+    private final Meter.MeterProvider<Counter> expiredCounters;
+
+    private final Meter.MeterProvider<Timer> serdeTimers;
+
+    private final Meter.MeterProvider<DistributionSummary> serdeSizes;
+
+    public QueryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.sendTimers = Timer.builder("query.send")
+                .description("Time from handing a record to the producer until the broker acknowledged it")
+                .withRegistry(meterRegistry);
+        this.processingTimers = Timer.builder("query.processing")
+                .description("Time spent answering a query with its handler, on the broadcasting node or a responder")
+                .withRegistry(meterRegistry);
+        this.remoteResponseTimer = Timer.builder("query.response.time")
+                .description("Time from broadcasting a query until each remote response to it arrived")
+                .tag("topic", RESULT_TOPIC_NAME)
+                .register(meterRegistry);
+        this.responseCounts = DistributionSummary.builder("query.responses")
+                .description("Remote responders that answered a broadcast query before it completed")
+                .baseUnit("responses")
+                .withRegistry(meterRegistry);
+        this.timeoutCounter = Counter.builder("query.timeouts")
+                .description("Broadcast queries whose completion policy was not satisfied before the timeout")
+                .tag("topic", QUERY_TOPIC_NAME)
+                .register(meterRegistry);
+        this.droppedResponseCounter = Counter.builder("query.response.dropped")
+                .description("Responses on this node's reply partition that arrived for an unknown or already "
+                        + "completed query")
+                .tag("topic", RESULT_TOPIC_NAME)
+                .register(meterRegistry);
+        this.listenerLagTimers = Timer.builder("query.listener.lag")
+                .description("Time from a record being produced until a listener on this node received it")
+                .withRegistry(meterRegistry);
+        this.selfSuppressedCounter = Counter.builder("query.self.suppressed")
+                .description("Queries received back from the query topic by the node that broadcast them")
+                .tag("topic", QUERY_TOPIC_NAME)
+                .register(meterRegistry);
+        this.shedCounter = Counter.builder("query.responder.shed")
+                .description("Queries from other nodes dropped unanswered because they were too old to answer in time")
+                .tag("topic", QUERY_TOPIC_NAME)
+                .register(meterRegistry);
+        this.expiredCounters = Counter.builder("query.expired")
+                .description("Queries skipped by a responder, or responses dropped on arrival, after the deadline of "
+                        + "the query had passed")
+                .withRegistry(meterRegistry);
+        this.serdeTimers = Timer.builder("query.serde.duration")
+                .description("Time spent serializing or deserializing a record value")
+                .withRegistry(meterRegistry);
+        this.serdeSizes = DistributionSummary.builder("query.serde.bytes")
+                .description("Size of a serialized record value")
+                .baseUnit("bytes")
+                .withRegistry(meterRegistry);
+    }
+
+    /**
+     * Starts timing an operation, to be stopped by one of the {@code record} methods.
+     */
+    Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    void recordSend(Timer.Sample sample, String topic, Throwable ex) {
+        sample.stop(sendTimers.withTags("topic", topic, "outcome", outcome(ex)));
+    }
+
+    /**
+     * Records the time a handler took to answer a query, on this node when it broadcast the query or as a
+     * responder when another node did.
+     */
+    void recordProcessing(Timer.Sample sample, boolean local, Throwable ex) {
+        sample.stop(processingTimers.withTags("topic", QUERY_TOPIC_NAME, "side", local ? "local" : "responder",
+                "outcome", outcome(ex)));
+    }
+
+    void recordRemoteResponse(long elapsedNanos) {
+        remoteResponseTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordCompletion(ResponseCollector.Completion completion) {
+        responseCounts.withTags("topic", RESULT_TOPIC_NAME, "outcome", completion.timedOut() ? "timeout" : "satisfied")
+                .record(completion.responses());
+        if (completion.timedOut()) {
+            timeoutCounter.increment();
+        }
+    }
+
+    void recordDroppedResponse() {
+        droppedResponseCounter.increment();
+    }
+
+    void recordSelfSuppressed() {
+        selfSuppressedCounter.increment();
+    }
+
+    void recordShed() {
+        shedCounter.increment();
+    }
+
+    /**
+     * Records a query or response on the given topic that was dropped because the query's deadline had passed.
+     */
+    void recordExpired(String topic) {
+        expiredCounters.withTags("topic", topic).increment();
+    }
+
+    /**
+     * Records how long ago a record was produced, by its timestamp, when a listener receives it.
+     */
+    public void recordListenerLag(String topic, long recordTimestamp) {
+        listenerLagTimers.withTags("topic", topic)
+                .record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - recordTimestamp)));
+    }
+
+    /**
+     * Wraps a serializer so that the size of each serialized value and the time taken are recorded.
+     */
+    public <T> Serializer<T> instrument(Serializer<T> serializer) {
+        return (topic, data) -> {
+            long startNanos = System.nanoTime();
+            try {
+                byte[] serialized = serializer.serialize(topic, data);
+                recordSerde(topic, "serialize", serialized, startNanos, SUCCESS);
+                return serialized;
+            } catch (RuntimeException e) {
+                recordSerde(topic, "serialize", null, startNanos, FAILURE);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Wraps a deserializer so that the size of each serialized value and the time taken are recorded.
+     */
+    public <T> Deserializer<T> instrument(Deserializer<T> deserializer) {
+        return (topic, data) -> {
+            long startNanos = System.nanoTime();
+            try {
+                T deserialized = deserializer.deserialize(topic, data);
+                recordSerde(topic, "deserialize", data, startNanos, SUCCESS);
+                return deserialized;
+            } catch (RuntimeException e) {
+                recordSerde(topic, "deserialize", data, startNanos, FAILURE);
+                throw e;
+            }
+        };
+    }
+
+    private void recordSerde(String topic, String operation, byte[] data, long startNanos, String outcome) {
+        serdeTimers.withTags("topic", topic, "operation", operation, "outcome", outcome)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (data != null) {
+            serdeSizes.withTags("topic", topic, "operation", operation).record(data.length);
+        }
+    }
+
+    private static String outcome(Throwable ex) {
+        return ex == null ? SUCCESS : FAILURE;
+    }
+}
@@ -0,0 +1,33 @@
+package org.storck.kafkamessagingexample.service;
+
+import lombok.Getter;
+
+/**
+ * Thrown when {@link QueryAdmission} turns a query away rather than letting it broadcast.
+ */
+@Getter
+public class QueryRejectedException extends RuntimeException {
+
+    /**
+     * Why a query was not admitted.
+     */
+    public enum Reason {
+
+        /**
+         * The admission queue was already full, so the caller should back off.
+         */
+        QUEUE_FULL,
+
+        /**
+         * The query waited in the admission queue until its deadline without being admitted.
+         */
+        QUEUE_TIMEOUT
+    }
+
+    private final Reason reason;
+
+    public QueryRejectedException(Reason reason, String message) {
+        super(message, null, false, false);
+        this.reason = reason;
+    }
+}
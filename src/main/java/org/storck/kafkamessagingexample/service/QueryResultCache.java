@@ -0,0 +1,91 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Serves repeated queries from the {@value #CACHE_NAME} cache, when it is configured, and merges concurrent
+ * identical queries into a single broadcast.  Queries are identified by their type and their text, with surrounding
+ * whitespace trimmed and internal whitespace collapsed, together with their completion policy and result reducer.
+ * Results that are not complete, because the query timed out while responders were still expected, are shared with
+ * the callers that joined the query but are not cached.
+ */
+@Service
+public class QueryResultCache {
+
+    public static final String CACHE_NAME = "queryResults";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Cache cache;
+
+    private final Map<QueryKey, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+    public QueryResultCache(CacheManager cacheManager) {
+        this.cache = cacheManager.getCache(CACHE_NAME);
+    }
+
+    /**
+     * Returns cached results for the query if there are any and the caller allows them, and otherwise joins an
+     * identical query that is already in flight, or runs the loader and caches what it returns if it is complete.
+     *
+     * @param type the query type, or null for the default type
+     * @param query the query text
+     * @param completionPolicy the policy the query completes by, since it affects the results
+     * @param resultReducer the reducer the results are folded by, since it affects the results
+     * @param useCache false to skip cached results, although the query may still join one in flight
+     * @param loader broadcasts the query and returns a future for its results and whether they are complete
+     * @return a future for the query results, which must not be modified
+     */
+    public CompletableFuture<List<String>> getOrLoad(String type, String query, CompletionPolicy completionPolicy,
+                                                     ResultReducer<?> resultReducer, boolean useCache,
+                                                     Supplier<CompletableFuture<QueryResults>> loader) {
+        QueryKey key = new QueryKey(type, normalize(query), completionPolicy, resultReducer);
+        if (cache != null && useCache) {
+            @SuppressWarnings("unchecked")
+            List<String> cached = cache.get(key, List.class);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        CompletableFuture<List<String>> results = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inFlight.putIfAbsent(key, results);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            loader.get().whenComplete((loaded, ex) -> {
+                if (ex == null) {
+                    List<String> shared = List.copyOf(loaded.results());
+                    if (cache != null && loaded.complete()) {
+                        cache.put(key, shared);
+                    }
+                    inFlight.remove(key, results);
+                    results.complete(shared);
+                } else {
+                    inFlight.remove(key, results);
+                    results.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, results);
+            results.completeExceptionally(e);
+        }
+        return results;
+    }
+
+    static String normalize(String query) {
+        return WHITESPACE.matcher(query.strip()).replaceAll(" ");
+    }
+
+    record QueryKey(String type, String query, CompletionPolicy completionPolicy, ResultReducer<?> resultReducer) {
+    }
+}
@@ -0,0 +1,14 @@
+package org.storck.kafkamessagingexample.service;
+
+import java.util.List;
+
+/**
+ * The reduced results of a broadcast query, and whether its completion policy was satisfied.  Results that are not
+ * complete were cut short by the timeout while responders were still expected, so they may be missing some
+ * responders' results.
+ *
+ * @param results the reduced local and remote results
+ * @param complete false if the timeout elapsed before the completion policy was satisfied
+ */
+public record QueryResults(List<String> results, boolean complete) {
+}
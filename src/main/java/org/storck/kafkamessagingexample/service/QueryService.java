@@ -1,30 +1,39 @@
 package org.storck.kafkamessagingexample.service;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.KafkaStreams;
-import org.apache.kafka.streams.StreamsBuilder;
-import org.apache.kafka.streams.errors.LogAndFailExceptionHandler;
-import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import org.storck.kafkamessagingexample.config.NodeId;
+import org.storck.kafkamessagingexample.handler.QueryProcessor;
 import org.storck.kafkamessagingexample.model.SimpleQuery;
 import org.storck.kafkamessagingexample.model.SimpleResponse;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import static org.storck.kafkamessagingexample.config.KafkaConfiguration.QUERY_TOPIC_NAME;
 import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
@@ -40,110 +49,504 @@ public class QueryService {
 
     private final KafkaTemplate<String, SimpleResponse> simpleResponseKafkaTemplate;
 
-    private final SimpleResponseSerde simpleResponseSerde;
+    private final ResponseRouter responseRouter;
 
-    private final StreamsBuilder streamsBuilder;
+    private final QueryProcessor queryProcessor;
 
-    private final Properties streamsProperties;
+    private final Executor queryExecutor;
 
-    private final Cache<String, String> queryIdCache = CacheBuilder.newBuilder()
-            .expireAfterWrite(10, TimeUnit.MINUTES)
-            .maximumSize(100)
-            .build();
+    private final String nodeId;
+
+    private final Executor responderExecutor;
+
+    private final Semaphore responderPermits;
+
+    private final int maxInFlightResponses;
+
+    private final long maxQueryAgeMs;
+
+    private final byte[] nodeIdBytes;
+
+    private final QueryMetrics queryMetrics;
+
+    private final QueryTracer queryTracer;
+
+    private final Clock clock;
 
     public QueryService(KafkaTemplate<String, SimpleQuery> simpleQueryKafkaTemplate,
                         KafkaTemplate<String, SimpleResponse> simpleResponseKafkaTemplate,
-                        SimpleResponseSerde simpleResponseSerde,
-                        StreamsBuilder streamsBuilder,
-                        Properties streamsProperties) {
+                        ResponseRouter responseRouter,
+                        QueryProcessor queryProcessor,
+                        @Qualifier("queryExecutor") Executor queryExecutor,
+                        NodeId nodeId,
+                        @Qualifier("responderExecutor") Executor responderExecutor,
+                        @Value("${kafka-messaging-example.responder.max-in-flight:256}") int maxInFlightResponses,
+                        @Value("${kafka-messaging-example.responder.max-query-age:5s}") Duration maxQueryAge,
+                        QueryMetrics queryMetrics,
+                        QueryTracer queryTracer) {
+        this(simpleQueryKafkaTemplate, simpleResponseKafkaTemplate, responseRouter, queryProcessor, queryExecutor,
+                nodeId.value(), responderExecutor, maxInFlightResponses, maxQueryAge, queryMetrics, queryTracer,
+                Clock.systemUTC());
+    }
+
+    QueryService(KafkaTemplate<String, SimpleQuery> simpleQueryKafkaTemplate,
+                 KafkaTemplate<String, SimpleResponse> simpleResponseKafkaTemplate,
+                 ResponseRouter responseRouter,
+                 QueryProcessor queryProcessor,
+                 Executor queryExecutor,
+                 String nodeId,
+                 Executor responderExecutor,
+                 int maxInFlightResponses,
+                 Duration maxQueryAge,
+                 QueryMetrics queryMetrics,
+                 QueryTracer queryTracer,
+                 Clock clock) {
         this.simpleQueryKafkaTemplate = simpleQueryKafkaTemplate;
         this.simpleResponseKafkaTemplate = simpleResponseKafkaTemplate;
-        this.simpleResponseSerde = simpleResponseSerde;
-        this.streamsBuilder = streamsBuilder;
-        this.streamsProperties = streamsProperties;
+        this.responseRouter = responseRouter;
+        this.queryProcessor = queryProcessor;
+        this.queryExecutor = queryExecutor;
+        this.nodeId = nodeId;
+        this.responderExecutor = responderExecutor;
+        this.responderPermits = new Semaphore(maxInFlightResponses);
+        this.maxInFlightResponses = maxInFlightResponses;
+        this.maxQueryAgeMs = maxQueryAge.toMillis();
+        this.nodeIdBytes = nodeId.getBytes(StandardCharsets.UTF_8);
+        this.queryMetrics = queryMetrics;
+        this.queryTracer = queryTracer;
+        this.clock = clock;
     }
 
+    /**
+     * Broadcasts a query, processes it locally, and blocks until the responses that arrive within the timeout have
+     * been combined with the local result.
+     *
+     * @param query the query to process
+     * @param timeout how long to wait for remote responses
+     * @return the combined local and remote results
+     */
     public List<String> processLocalQuery(String query, Duration timeout)
             throws CompletionException, ExecutionException, InterruptedException {
+        return processLocalQueryAsync(null, query, timeout, CompletionPolicy.timeout(), ResultReducer.concat()).get();
+    }
+
+    /**
+     * Broadcasts a query and processes it locally without blocking the calling thread.  The returned future
+     * completes with the reduced local and remote results once the completion policy is satisfied, or once the
+     * timeout has elapsed, whichever comes first.  Remote results are folded into the reducer's accumulator as they
+     * arrive, rather than being buffered until the query completes.
+     *
+     * @param type the query type, or null for the default type
+     * @param query the query to process
+     * @param timeout the longest time to wait for remote responses
+     * @param completionPolicy decides when enough remote responses have arrived
+     * @param resultReducer folds the local and remote results into the response
+     * @return a future for the reduced local and remote results, failed with an {@link IllegalArgumentException}
+     *         if no handler is registered for the query type
+     */
+    public CompletableFuture<List<String>> processLocalQueryAsync(String type, String query, Duration timeout,
+                                                                  CompletionPolicy completionPolicy,
+                                                                  ResultReducer<?> resultReducer) {
+        return collectLocalQueryAsync(type, query, timeout, completionPolicy, resultReducer)
+                .thenApply(QueryResults::results);
+    }
+
+    /**
+     * Processes a query like {@link #processLocalQueryAsync}, but also reports whether the completion policy was
+     * satisfied before the timeout, so that callers can tell results that may be missing responders apart.  A query
+     * under the {@link CompletionPolicy#timeout()} policy is complete once its timeout has elapsed.
+     *
+     * @param type the query type, or null for the default type
+     * @param query the query to process
+     * @param timeout the longest time to wait for remote responses
+     * @param completionPolicy decides when enough remote responses have arrived
+     * @param resultReducer folds the local and remote results into the response
+     * @return a future for the reduced local and remote results, failed with an {@link IllegalArgumentException}
+     *         if no handler is registered for the query type
+     */
+    public CompletableFuture<QueryResults> collectLocalQueryAsync(String type, String query, Duration timeout,
+                                                                  CompletionPolicy completionPolicy,
+                                                                  ResultReducer<?> resultReducer) {
+        if (!queryProcessor.supports(type)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unsupported query type: " + type));
+        }
+        return reduceLocalQuery(type, query, timeout, completionPolicy, resultReducer);
+    }
+
+    private <A> CompletableFuture<QueryResults> reduceLocalQuery(String type, String query, Duration timeout,
+                                                                 CompletionPolicy completionPolicy,
+                                                                 ResultReducer<A> resultReducer) {
         String queryId = UUID.randomUUID().toString();
         SimpleQuery simpleQuery = SimpleQuery.builder()
                 .id(queryId)
                 .query(query + " (broadcast)")
+                .type(type)
                 .build();
-        queryIdCache.put(queryId, query);
+        A remoteAccumulator = resultReducer.newAccumulator();
+        ResponseCollector responseCollector = new ResponseCollector(completionPolicy,
+                timed(response -> resultReducer.accumulate(remoteAccumulator, response.getResults())));
+        CompletableFuture<SendResult<String, SimpleQuery>> sendFuture =
+                broadcast(simpleQuery, responseCollector, timeout);
+
+        CompletableFuture<A> localProcessingFuture = sendFuture
+                .thenCompose(sendResult -> processLocally(type, query))
+                .thenApply(localResults -> {
+                    A localAccumulator = resultReducer.newAccumulator();
+                    resultReducer.accumulate(localAccumulator, localResults);
+                    return localAccumulator;
+                });
 
-        CompletableFuture<SendResult<String, SimpleQuery>> sendFuture = simpleQueryKafkaTemplate.send("query-topic", simpleQuery);
+        CompletableFuture<ResponseCollector.Completion> remoteProcessingFuture = sendFuture
+                .thenCompose(sendResult -> awaitResponses(queryId, responseCollector, timeout));
 
-        CompletableFuture<List<String>> localProcessingFuture = sendFuture.thenApplyAsync(sendResult -> {
-            try {
-                return processQuery(query);
-            } catch (Exception e) {
-                throw new CompletionException("Error processing query", e);
+        boolean waitsForTimeout = completionPolicy instanceof CompletionPolicy.Timeout;
+        return localProcessingFuture
+                .thenCombine(remoteProcessingFuture, (localAccumulator, completion) -> new QueryResults(
+                        resultReducer.finish(resultReducer.combine(localAccumulator, remoteAccumulator)),
+                        waitsForTimeout || !completion.timedOut()))
+                .exceptionally(ex -> {
+                    throw new IllegalStateException("Failed to process local query", ex);
+                });
+    }
+
+    /**
+     * Broadcasts a batch of queries of one type as a single query, and processes them locally, without blocking the
+     * calling thread.  Each responder answers the whole batch with one response, whose results are split back out
+     * and reduced per sub-query, so the batch costs one send, fan-out and response window rather than one for each
+     * sub-query.  The completion policy counts each responder's batch response once.  Responses without a result
+     * for every sub-query, from nodes that predate batches, are counted but their results are ignored.
+     *
+     * @param type the query type of every sub-query, or null for the default type
+     * @param queries the sub-queries to process
+     * @param timeout the longest time to wait for remote responses
+     * @param completionPolicy decides when enough remote responses have arrived
+     * @param resultReducer folds the local and remote results of each sub-query into its response
+     * @return a future for the reduced local and remote results of each sub-query, in the order of the batch,
+     *         failed with an {@link IllegalArgumentException} if no handler is registered for the query type
+     */
+    public CompletableFuture<List<List<String>>> processLocalBatchAsync(String type, List<String> queries,
+                                                                        Duration timeout,
+                                                                        CompletionPolicy completionPolicy,
+                                                                        ResultReducer<?> resultReducer) {
+        if (!queryProcessor.supports(type)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unsupported query type: " + type));
+        }
+        return reduceLocalBatch(type, queries, timeout, completionPolicy, resultReducer);
+    }
+
+    private <A> CompletableFuture<List<List<String>>> reduceLocalBatch(String type, List<String> queries,
+                                                                       Duration timeout,
+                                                                       CompletionPolicy completionPolicy,
+                                                                       ResultReducer<A> resultReducer) {
+        String queryId = UUID.randomUUID().toString();
+        SimpleQuery simpleQuery = SimpleQuery.builder()
+                .id(queryId)
+                .type(type)
+                .batch(queries.stream().map(query -> query + " (broadcast)").toList())
+                .build();
+        List<A> remoteAccumulators = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            remoteAccumulators.add(resultReducer.newAccumulator());
+        }
+        ResponseCollector responseCollector = new ResponseCollector(completionPolicy, timed(response -> {
+            List<List<String>> batchResults = response.getBatchResults();
+            if (batchResults == null || batchResults.size() != queries.size()) {
+                log.debug("Ignoring results from {} that do not match batch query: {}",
+                        response.getResponderId(), queryId);
+                return;
+            }
+            for (int i = 0; i < batchResults.size(); i++) {
+                resultReducer.accumulate(remoteAccumulators.get(i), batchResults.get(i));
             }
-        });
-
-        CompletableFuture<List<String>> remoteProcessingFuture = sendFuture.thenCompose(sendResult ->
-                CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return collectResponses(simpleQuery.getId(), timeout);
-                    } catch (Exception e) {
-                        throw new CompletionException("Error collecting responses", e);
+        }));
+        CompletableFuture<SendResult<String, SimpleQuery>> sendFuture =
+                broadcast(simpleQuery, responseCollector, timeout);
+
+        CompletableFuture<List<A>> localProcessingFuture = sendFuture
+                .thenCompose(sendResult -> processBatchLocally(type, queries))
+                .thenApply(localResults -> localResults.stream()
+                        .map(results -> {
+                            A localAccumulator = resultReducer.newAccumulator();
+                            resultReducer.accumulate(localAccumulator, results);
+                            return localAccumulator;
+                        })
+                        .toList());
+
+        CompletableFuture<List<A>> remoteProcessingFuture = sendFuture
+                .thenCompose(sendResult -> awaitResponses(queryId, responseCollector, timeout))
+                .thenApply(ignored -> remoteAccumulators);
+
+        return localProcessingFuture
+                .thenCombine(remoteProcessingFuture, (localAccumulators, remoteResults) ->
+                        IntStream.range(0, queries.size())
+                                .mapToObj(i -> resultReducer.finish(
+                                        resultReducer.combine(localAccumulators.get(i), remoteResults.get(i))))
+                                .toList())
+                .exceptionally(ex -> {
+                    throw new IllegalStateException("Failed to process local batch query", ex);
+                });
+    }
+
+    /**
+     * Broadcasts a query and streams results as they become available: the local result as soon as it has been
+     * processed, then each remote response as it arrives.  Results are handed to the consumer rather than being
+     * buffered, and the consumer may be called from more than one thread.
+     *
+     * @param type the query type, or null for the default type
+     * @param query the query to process
+     * @param timeout the longest time to wait for remote responses
+     * @param completionPolicy decides when enough remote responses have arrived
+     * @param responseConsumer receives the local response and each remote response
+     * @return a future that completes once the local response and all remote responses have been delivered, failed
+     *         with an {@link IllegalArgumentException} if no handler is registered for the query type
+     */
+    public CompletableFuture<Void> streamLocalQuery(String type, String query, Duration timeout,
+                                                    CompletionPolicy completionPolicy,
+                                                    Consumer<SimpleResponse> responseConsumer) {
+        if (!queryProcessor.supports(type)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unsupported query type: " + type));
+        }
+        String queryId = UUID.randomUUID().toString();
+        SimpleQuery simpleQuery = SimpleQuery.builder()
+                .id(queryId)
+                .query(query + " (broadcast)")
+                .type(type)
+                .build();
+        ResponseCollector responseCollector = new ResponseCollector(completionPolicy, timed(responseConsumer));
+        CompletableFuture<SendResult<String, SimpleQuery>> sendFuture =
+                broadcast(simpleQuery, responseCollector, timeout);
+
+        CompletableFuture<Void> localProcessingFuture = processLocally(type, query)
+                .thenAccept(results -> responseConsumer.accept(SimpleResponse.builder()
+                        .id(queryId)
+                        .responderId(nodeId)
+                        .results(results)
+                        .build()));
+
+        CompletableFuture<ResponseCollector.Completion> remoteProcessingFuture = sendFuture
+                .thenCompose(sendResult -> awaitResponses(queryId, responseCollector, timeout));
+
+        return CompletableFuture.allOf(localProcessingFuture, remoteProcessingFuture);
+    }
+
+    /**
+     * Registers the collector for responses to the query before sending it, so that no early response is missed.
+     * The query carries the time at which this node will stop waiting for responses as its deadline.
+     */
+    private CompletableFuture<SendResult<String, SimpleQuery>> broadcast(SimpleQuery simpleQuery,
+                                                                       ResponseCollector responseCollector,
+                                                                       Duration timeout) {
+        responseRouter.register(simpleQuery.getId(), responseCollector);
+        ProducerRecord<String, SimpleQuery> queryRecord =
+                new ProducerRecord<>(QUERY_TOPIC_NAME, simpleQuery.getId(), simpleQuery);
+        queryRecord.headers().add(QueryHeaders.ORIGIN_NODE, nodeIdBytes);
+        QueryDeadlines.set(queryRecord.headers(), clock.millis() + timeout.toMillis());
+        responseRouter.addReplyAddress(queryRecord.headers());
+        queryTracer.traceQuery(queryRecord.headers());
+        Timer.Sample sendSample = queryMetrics.start();
+        return simpleQueryKafkaTemplate.send(queryRecord)
+                .whenComplete((sendResult, ex) -> {
+                    queryMetrics.recordSend(sendSample, QUERY_TOPIC_NAME, ex);
+                    if (ex != null) {
+                        responseRouter.unregister(simpleQuery.getId());
                     }
-                }));
-
-        return localProcessingFuture.thenCombineAsync(remoteProcessingFuture, (localResponse, remoteResponses) -> {
-            List<String> combined = new ArrayList<>();
-            combined.addAll(localResponse);
-            combined.addAll(remoteResponses);
-            return combined;
-        }).exceptionally(ex -> {
-            throw new IllegalStateException("Failed to process local query", ex);
-        }).get();
-    }
-
-    private List<String> collectResponses(String queryId, Duration timeout) throws InterruptedException {
-        List<String> responses = new ArrayList<>();
-        streamsBuilder
-                .stream(RESULT_TOPIC_NAME, Consumed.with(Serdes.String(), simpleResponseSerde))
-                .filter((key, value) -> value.getId().equals(queryId))
-                .foreach((key, value) -> responses.addAll(value.getResults()));
-        CountDownLatch latch = new CountDownLatch(1);
-        ClassLoader currentClassloader = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(LogAndFailExceptionHandler.class.getClassLoader());
-        try (KafkaStreams streams = new KafkaStreams(streamsBuilder.build(), streamsProperties)) {
-            streams.start();
-            latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
-        } finally {
-            Thread.currentThread().setContextClassLoader(currentClassloader);
+                });
+    }
+
+    private CompletableFuture<ResponseCollector.Completion> awaitResponses(String queryId,
+                                                                           ResponseCollector responseCollector,
+                                                                           Duration timeout) {
+        return responseCollector.awaitCompletion(timeout)
+                .whenComplete((completion, ex) -> responseRouter.unregister(queryId))
+                .thenApply(completion -> {
+                    queryMetrics.recordCompletion(completion);
+                    return completion;
+                });
+    }
+
+    /**
+     * Processes a query on this node.  A local handler that times out contributes no results, rather than failing
+     * the query, so that the remote results are still returned.
+     */
+    private CompletableFuture<List<String>> processLocally(String type, String query) {
+        Timer.Sample processingSample = queryMetrics.start();
+        return queryProcessor.processAsync(type, query, queryExecutor)
+                .whenComplete((results, ex) -> queryMetrics.recordProcessing(processingSample, true, ex))
+                .exceptionally(QueryService::emptyIfTimedOut);
+    }
+
+    /**
+     * Processes every sub-query of a batch on this node, where a sub-query whose handler times out contributes no
+     * results.
+     */
+    private CompletableFuture<List<List<String>>> processBatchLocally(String type, List<String> queries) {
+        Timer.Sample processingSample = queryMetrics.start();
+        List<CompletableFuture<List<String>>> resultFutures = queries.stream()
+                .map(query -> queryProcessor.processAsync(type, query, queryExecutor)
+                        .exceptionally(QueryService::emptyIfTimedOut))
+                .toList();
+        return CompletableFuture.allOf(resultFutures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> resultFutures.stream().map(CompletableFuture::join).toList())
+                .whenComplete((results, ex) -> queryMetrics.recordProcessing(processingSample, true, ex));
+    }
+
+    private static List<String> emptyIfTimedOut(Throwable ex) {
+        if (QueryProcessor.isTimeout(ex)) {
+            return List.of();
         }
-        return responses;
+        throw ex instanceof CompletionException completionException
+                ? completionException
+                : new CompletionException(ex);
+    }
+
+    /**
+     * Wraps a response sink so that the time from now until each response reaches it is recorded.
+     */
+    private Consumer<SimpleResponse> timed(Consumer<SimpleResponse> responseSink) {
+        long broadcastNanos = System.nanoTime();
+        return response -> {
+            queryMetrics.recordRemoteResponse(System.nanoTime() - broadcastNanos);
+            responseSink.accept(response);
+        };
     }
 
     @KafkaListener(topics = QUERY_TOPIC_NAME,
             groupId = "query_consumer_#{T(java.util.UUID).randomUUID().toString()}",
             containerFactory = "simpleQueryKafkaListenerContainerFactory",
             autoStartup = "true")
-    public void listenForQueries(SimpleQuery simpleQuery) {
-        if (queryIdCache.getIfPresent(simpleQuery.getId()) == null) {
-            SimpleResponse response = SimpleResponse.builder()
-                    .id(simpleQuery.getId())
-                    .results(processQuery(simpleQuery.getQuery()))
-                    .build();
-            simpleResponseKafkaTemplate.send(RESULT_TOPIC_NAME, "result", response);
+    public void listenForQueries(List<ConsumerRecord<String, SimpleQuery>> queryRecords) throws InterruptedException {
+        for (ConsumerRecord<String, SimpleQuery> queryRecord : queryRecords) {
+            queryMetrics.recordListenerLag(queryRecord.topic(), queryRecord.timestamp());
+            if (queryRecord.value() == null) {
+                log.debug("Skipping expired, empty or undecodable query record at offset: {}", queryRecord.offset());
+            } else if (isOwnQuery(queryRecord.headers(), nodeIdBytes)) {
+                queryMetrics.recordSelfSuppressed();
+            } else if (!queryProcessor.supports(queryRecord.value().getType())) {
+                log.debug("No handler for query type: {}", queryRecord.value().getType());
+            } else {
+                respond(queryRecord);
+            }
+        }
+    }
+
+    /**
+     * Returns true if this node broadcast the query, judging by its origin header.  This costs the same regardless
+     * of how many queries are in flight, because it keeps no record of the queries this node has sent.
+     */
+    static boolean isOwnQuery(Headers queryHeaders, byte[] nodeIdBytes) {
+        Header originNode = queryHeaders.lastHeader(QueryHeaders.ORIGIN_NODE);
+        return originNode != null && Arrays.equals(originNode.value(), nodeIdBytes);
+    }
+
+    /**
+     * Returns the number of handler runs that could start now before the query listener blocks.
+     */
+    int availableResponderPermits() {
+        return responderPermits.availablePermits();
+    }
+
+    /**
+     * Runs the query's handler on the responder executor and sends the response asynchronously.  A permit is held for
+     * each handler run, one per sub-query of a batch, from submission until the send completes and every run has
+     * returned, even one whose results were abandoned for exceeding its timeout.  When too many handler runs are in
+     * flight the consumer thread blocks here, which stops it from polling more queries until the backlog drains.  A
+     * batch larger than the whole budget waits for all of it.  A handler that times out or fails gets no response, so
+     * it does not count toward the originating node's completion policy.  Queries whose deadline has passed once a
+     * permit is free, or by the time they have been processed, are dropped unanswered, since the originating node
+     * has stopped waiting for them.  Queries without a deadline, from nodes that predate deadlines, are dropped
+     * instead when they are older than the maximum query age.  A batch query is answered with a single response
+     * that carries the results of each sub-query.
+     */
+    private void respond(ConsumerRecord<String, SimpleQuery> queryRecord) throws InterruptedException {
+        SimpleQuery simpleQuery = queryRecord.value();
+        int permits = simpleQuery.getBatch() == null
+                ? 1
+                : Math.max(1, Math.min(simpleQuery.getBatch().size(), maxInFlightResponses));
+        responderPermits.acquire(permits);
+        long receivedAt = clock.millis();
+        if (QueryDeadlines.hasPassed(queryRecord.headers(), receivedAt)) {
+            responderPermits.release(permits);
+            queryMetrics.recordExpired(queryRecord.topic());
+            return;
         }
+        if (!QueryDeadlines.isSet(queryRecord.headers()) && receivedAt - queryRecord.timestamp() > maxQueryAgeMs) {
+            responderPermits.release(permits);
+            queryMetrics.recordShed();
+            return;
+        }
+        Timer.Sample processingSample = queryMetrics.start();
+        TrackingExecutor handlerExecutor = new TrackingExecutor(responderExecutor);
+        CompletableFuture<SimpleResponse> responseFuture;
+        try {
+            responseFuture = answer(simpleQuery, handlerExecutor);
+        } catch (RejectedExecutionException e) {
+            handlerExecutor.closeSubmissions();
+            handlerExecutor.finished().whenComplete((ignored, ex) -> responderPermits.release(permits));
+            throw e;
+        }
+        handlerExecutor.closeSubmissions();
+        CompletableFuture<SendResult<String, SimpleResponse>> sendFuture = responseFuture
+                .whenComplete((response, ex) -> queryMetrics.recordProcessing(processingSample, false, ex))
+                .thenCompose(response -> {
+                    if (QueryDeadlines.hasPassed(queryRecord.headers(), clock.millis())) {
+                        queryMetrics.recordExpired(queryRecord.topic());
+                        return CompletableFuture.<SendResult<String, SimpleResponse>>completedFuture(null);
+                    }
+                    ProducerRecord<String, SimpleResponse> responseRecord =
+                            replyRecord(queryRecord.headers(), response);
+                    queryTracer.traceResponse(queryRecord.headers(), nodeIdBytes, receivedAt,
+                            responseRecord.headers());
+                    return send(responseRecord);
+                })
+                .whenComplete((sendResult, ex) -> {
+                    if (QueryProcessor.isTimeout(ex)) {
+                        log.debug("Not responding to query whose handler timed out: {}", simpleQuery.getId());
+                    } else if (ex != null) {
+                        log.warn("Failed to respond to query: {}", simpleQuery.getId(), ex);
+                    }
+                });
+        CompletableFuture.allOf(sendFuture, handlerExecutor.finished())
+                .whenComplete((ignored, ex) -> responderPermits.release(permits));
+    }
+
+    /**
+     * Processes a query, or every sub-query of a batch query, on the given executor and builds the response.
+     */
+    private CompletableFuture<SimpleResponse> answer(SimpleQuery simpleQuery, Executor executor) {
+        SimpleResponse.SimpleResponseBuilder response = SimpleResponse.builder()
+                .id(simpleQuery.getId())
+                .responderId(nodeId);
+        if (simpleQuery.getBatch() == null) {
+            return queryProcessor.processAsync(simpleQuery.getType(), simpleQuery.getQuery(), executor)
+                    .thenApply(results -> response.results(results).build());
+        }
+        return queryProcessor.processBatchAsync(simpleQuery.getType(), simpleQuery.getBatch(), executor)
+                .thenApply(batchResults -> response.batchResults(batchResults).build());
+    }
+
+    private CompletableFuture<SendResult<String, SimpleResponse>> send(
+            ProducerRecord<String, SimpleResponse> responseRecord) {
+        Timer.Sample sendSample = queryMetrics.start();
+        return simpleResponseKafkaTemplate.send(responseRecord)
+                .whenComplete((sendResult, ex) -> queryMetrics.recordSend(sendSample, responseRecord.topic(), ex));
     }
 
-    private List<String> processQuery(String query) {
-        log.info("Received query: {}", query);
-        return List.of(
-                "=======================================================",
-                "query: " + query,
-                "OS Name: " + System.getProperty("os.name"),
-                "OS Version: " + System.getProperty("os.version"),
-                "OS Architecture: " + System.getProperty("os.arch"),
-                "User Name: " + System.getProperty("user.name"),
-                "User Home: " + System.getProperty("user.home"),
-                "======================================================="
-        );
+    /**
+     * Addresses a response to the originating node's reply partition when the query carries one, and otherwise to
+     * the result topic, keyed by query id.  The response carries the query's deadline, so that it can be dropped
+     * undecoded if it arrives late.
+     */
+    private static ProducerRecord<String, SimpleResponse> replyRecord(Headers queryHeaders, SimpleResponse response) {
+        Header replyTopic = queryHeaders.lastHeader(KafkaHeaders.REPLY_TOPIC);
+        Header replyPartition = queryHeaders.lastHeader(KafkaHeaders.REPLY_PARTITION);
+        ProducerRecord<String, SimpleResponse> responseRecord = replyTopic == null || replyPartition == null
+                ? new ProducerRecord<>(RESULT_TOPIC_NAME, response.getId(), response)
+                : new ProducerRecord<>(
+                        new String(replyTopic.value(), StandardCharsets.UTF_8),
+                        ByteBuffer.wrap(replyPartition.value()).getInt(),
+                        response.getId(),
+                        response);
+        QueryDeadlines.copy(queryHeaders, responseRecord.headers());
+        return responseRecord;
     }
 }
@@ -0,0 +1,116 @@
+package org.storck.kafkamessagingexample.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Propagates tracing headers from a query to its responses and back, and hands the resulting
+ * {@link ResponseTrace}s to the {@link TraceExporter}s.  A query carries a trace id and its send time; each
+ * response echoes both and adds the responder's id and when it received and answered the query.  Each broadcast
+ * gets a new trace id.
+ */
+@Slf4j
+@Service
+public class QueryTracer {
+
+    private final boolean enabled;
+
+    private final List<TraceExporter> traceExporters;
+
+    public QueryTracer(@Value("${kafka-messaging-example.tracing.enabled:true}") boolean enabled,
+                       List<TraceExporter> traceExporters) {
+        this.enabled = enabled;
+        this.traceExporters = List.copyOf(traceExporters);
+    }
+
+    /**
+     * Adds the trace id and send time to the headers of an outgoing query.
+     */
+    void traceQuery(Headers queryHeaders) {
+        if (!enabled) {
+            return;
+        }
+        queryHeaders.add(QueryHeaders.TRACE_ID, UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        queryHeaders.add(QueryHeaders.SENT_AT, timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * Adds the tracing headers to a response, if the query it answers was traced.
+     *
+     * @param queryHeaders the headers of the query record
+     * @param responderId the node id of the responder, as UTF-8 bytes
+     * @param receivedAt when the responder received the query
+     * @param responseHeaders the headers of the response record
+     */
+    void traceResponse(Headers queryHeaders, byte[] responderId, long receivedAt, Headers responseHeaders) {
+        Header traceId = queryHeaders.lastHeader(QueryHeaders.TRACE_ID);
+        Header sentAt = queryHeaders.lastHeader(QueryHeaders.SENT_AT);
+        if (!hasValue(traceId) || !isTimestamp(sentAt)) {
+            return;
+        }
+        responseHeaders.add(traceId);
+        responseHeaders.add(sentAt);
+        responseHeaders.add(QueryHeaders.RESPONDER_ID, responderId);
+        responseHeaders.add(QueryHeaders.RECEIVED_AT, timestamp(receivedAt));
+        responseHeaders.add(QueryHeaders.RESPONDED_AT, timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * Exports the trace of a response that was routed to a query waiting on this node, if it carries one.  A response
+     * whose tracing headers are missing or malformed, such as a timestamp that is not eight bytes, is not traced.
+     */
+    public void responseReceived(ConsumerRecord<String, SimpleResponse> responseRecord) {
+        if (traceExporters.isEmpty()) {
+            return;
+        }
+        long arrivedAt = System.currentTimeMillis();
+        Headers headers = responseRecord.headers();
+        Header traceId = headers.lastHeader(QueryHeaders.TRACE_ID);
+        Header sentAt = headers.lastHeader(QueryHeaders.SENT_AT);
+        Header responderId = headers.lastHeader(QueryHeaders.RESPONDER_ID);
+        Header receivedAt = headers.lastHeader(QueryHeaders.RECEIVED_AT);
+        Header respondedAt = headers.lastHeader(QueryHeaders.RESPONDED_AT);
+        if (!hasValue(traceId) || !hasValue(responderId)
+                || !isTimestamp(sentAt) || !isTimestamp(receivedAt) || !isTimestamp(respondedAt)) {
+            log.debug("Response {} carries no complete trace", responseRecord.key());
+            return;
+        }
+        ResponseTrace responseTrace = new ResponseTrace(
+                new String(traceId.value(), StandardCharsets.UTF_8),
+                responseRecord.key(),
+                new String(responderId.value(), StandardCharsets.UTF_8),
+                ByteBuffer.wrap(sentAt.value()).getLong(),
+                ByteBuffer.wrap(receivedAt.value()).getLong(),
+                ByteBuffer.wrap(respondedAt.value()).getLong(),
+                arrivedAt);
+        for (TraceExporter traceExporter : traceExporters) {
+            try {
+                traceExporter.export(responseTrace);
+            } catch (RuntimeException e) {
+                log.warn("Trace exporter failed: {}", traceExporter.getClass().getName(), e);
+            }
+        }
+    }
+
+    private static boolean hasValue(Header header) {
+        return header != null && header.value() != null;
+    }
+
+    private static boolean isTimestamp(Header header) {
+        return hasValue(header) && header.value().length == Long.BYTES;
+    }
+
+    private static byte[] timestamp(long epochMillis) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(epochMillis).array();
+    }
+}
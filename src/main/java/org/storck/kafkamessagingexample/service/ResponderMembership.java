@@ -0,0 +1,129 @@
+package org.storck.kafkamessagingexample.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.storck.kafkamessagingexample.config.NodeId;
+import org.storck.kafkamessagingexample.model.NodeHeartbeat;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.MEMBERSHIP_TOPIC_NAME;
+
+/**
+ * Tracks which nodes are alive to answer broadcast queries.  Every node publishes a {@link NodeHeartbeat} keyed by
+ * its node id to a compacted topic, and every node reads the topic from the beginning to keep a local view of its
+ * peers.  Peers are dropped when their heartbeats stop, or immediately when they publish a tombstone on shutdown.
+ * Liveness is judged by when this node received each heartbeat, by its own clock, so peers whose clocks differ
+ * from this node's are judged correctly.  Heartbeats of departed nodes that are replayed from the topic on startup
+ * keep those nodes live for at most one member timeout.
+ */
+@Slf4j
+@Service
+public class ResponderMembership {
+
+    private final KafkaTemplate<String, NodeHeartbeat> nodeHeartbeatKafkaTemplate;
+
+    private final ResponseRouter responseRouter;
+
+    private final String nodeId;
+
+    private final long memberTimeoutMs;
+
+    private final Clock clock;
+
+    private final Map<String, Long> lastHeartbeats = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ResponderMembership(KafkaTemplate<String, NodeHeartbeat> nodeHeartbeatKafkaTemplate,
+                               ResponseRouter responseRouter,
+                               NodeId nodeId,
+                               @Value("${kafka-messaging-example.membership.member-timeout-ms:6000}") long memberTimeoutMs) {
+        this(nodeHeartbeatKafkaTemplate, responseRouter, nodeId.value(), memberTimeoutMs, Clock.systemUTC());
+    }
+
+    ResponderMembership(KafkaTemplate<String, NodeHeartbeat> nodeHeartbeatKafkaTemplate,
+                        ResponseRouter responseRouter, String nodeId, long memberTimeoutMs, Clock clock) {
+        this.nodeHeartbeatKafkaTemplate = nodeHeartbeatKafkaTemplate;
+        this.responseRouter = responseRouter;
+        this.nodeId = nodeId;
+        this.memberTimeoutMs = memberTimeoutMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the ids of the other nodes that are currently alive to respond to a broadcast query.
+     */
+    public Set<String> liveResponders() {
+        long cutoff = clock.millis() - memberTimeoutMs;
+        return lastHeartbeats.entrySet().stream()
+                .filter(entry -> entry.getValue() >= cutoff)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Returns the number of remote responses a broadcast query can expect.
+     */
+    public int expectedFanOut() {
+        return liveResponders().size();
+    }
+
+    @Scheduled(fixedRateString = "${kafka-messaging-example.membership.heartbeat-interval-ms:2000}")
+    public void sendHeartbeat() {
+        nodeHeartbeatKafkaTemplate.send(MEMBERSHIP_TOPIC_NAME, nodeId, NodeHeartbeat.builder()
+                .nodeId(nodeId)
+                .timestamp(clock.millis())
+                .build());
+    }
+
+    /**
+     * Drops peers whose heartbeats have stopped, and lets waiting queries re-check whether they have now heard from
+     * every live responder.
+     */
+    @Scheduled(fixedRateString = "${kafka-messaging-example.membership.heartbeat-interval-ms:2000}")
+    public void evictSilentMembers() {
+        long cutoff = clock.millis() - memberTimeoutMs;
+        if (lastHeartbeats.values().removeIf(lastHeartbeat -> lastHeartbeat < cutoff)) {
+            responseRouter.reevaluatePending();
+        }
+    }
+
+    @KafkaListener(topics = MEMBERSHIP_TOPIC_NAME,
+            groupId = "membership_consumer_#{T(java.util.UUID).randomUUID().toString()}",
+            containerFactory = "nodeHeartbeatKafkaListenerContainerFactory",
+            autoStartup = "true")
+    public void listenForHeartbeats(ConsumerRecord<String, NodeHeartbeat> heartbeatRecord) {
+        String memberId = heartbeatRecord.key();
+        if (memberId == null || memberId.equals(nodeId)) {
+            return;
+        }
+        NodeHeartbeat heartbeat = heartbeatRecord.value();
+        if (heartbeat == null) {
+            log.info("Node left the cluster: {}", memberId);
+            lastHeartbeats.remove(memberId);
+            responseRouter.reevaluatePending();
+        } else if (lastHeartbeats.put(memberId, clock.millis()) == null) {
+            log.info("Node joined the cluster: {}", memberId);
+        }
+    }
+
+    /**
+     * Publishes a tombstone so that peers drop this node without waiting for its heartbeats to time out.
+     */
+    @PreDestroy
+    public void leave() {
+        nodeHeartbeatKafkaTemplate.send(MEMBERSHIP_TOPIC_NAME, nodeId, null);
+        nodeHeartbeatKafkaTemplate.flush();
+    }
+}
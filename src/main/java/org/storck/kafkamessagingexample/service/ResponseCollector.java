@@ -0,0 +1,86 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hands the remote responses to one broadcast query to a sink until its {@link CompletionPolicy} is satisfied or
+ * the timeout elapses, whichever comes first.  The sink is only ever called while holding this collector's lock,
+ * and never after the future returned by {@link #awaitCompletion(Duration)} has completed.
+ */
+class ResponseCollector {
+
+    private final CompletionPolicy completionPolicy;
+
+    private final Consumer<SimpleResponse> responseSink;
+
+    private final Set<String> responders = new HashSet<>();
+
+    private final CompletableFuture<Boolean> responseWindow = new CompletableFuture<>();
+
+    private boolean closed;
+
+    ResponseCollector(CompletionPolicy completionPolicy, Consumer<SimpleResponse> responseSink) {
+        this.completionPolicy = completionPolicy;
+        this.responseSink = responseSink;
+    }
+
+    /**
+     * Passes a response to the sink and completes the response window if the policy is satisfied.
+     */
+    void accept(SimpleResponse response) {
+        boolean satisfied;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            responseSink.accept(response);
+            responders.add(response.getResponderId());
+            satisfied = completionPolicy.isSatisfied(responders);
+        }
+        if (satisfied) {
+            responseWindow.complete(true);
+        }
+    }
+
+    /**
+     * Re-checks the policy without a new response, for policies that depend on cluster membership.
+     */
+    void reevaluate() {
+        boolean satisfied;
+        synchronized (this) {
+            satisfied = !closed && completionPolicy.isSatisfied(responders);
+        }
+        if (satisfied) {
+            responseWindow.complete(true);
+        }
+    }
+
+    /**
+     * Returns a future that completes early when the policy is satisfied, and otherwise when the timeout elapses.
+     * Once it has completed, the sink receives no further responses.
+     */
+    CompletableFuture<Completion> awaitCompletion(Duration timeout) {
+        return responseWindow
+                .completeOnTimeout(false, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(this::close);
+    }
+
+    private synchronized Completion close(boolean satisfied) {
+        closed = true;
+        return new Completion(responders.size(), !satisfied);
+    }
+
+    /**
+     * How a query's response window closed: the number of responders that answered in time, and whether the
+     * timeout elapsed before the policy was satisfied.
+     */
+    record Completion(int responses, boolean timedOut) {
+    }
+}
@@ -0,0 +1,110 @@
+package org.storck.kafkamessagingexample.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
+
+/**
+ * Application-scoped consumer of the result topic that routes each {@link SimpleResponse} to the query that is
+ * waiting for it, correlated by the response id.
+ * <p>
+ * When this node owns a reply partition, queries carry its address in {@link KafkaHeaders#REPLY_TOPIC} and
+ * {@link KafkaHeaders#REPLY_PARTITION} headers, in the style of Spring's {@code ReplyingKafkaTemplate}.  Responders
+ * then write only to that partition, and this node consumes only that partition, so it never reads responses to
+ * other nodes' queries.  Without a reply partition, every node consumes the whole result topic.
+ */
+@Slf4j
+@Service
+public class ResponseRouter {
+
+    private final Map<String, ResponseCollector> pendingQueries = new ConcurrentHashMap<>();
+
+    private final int replyPartition;
+
+    private final QueryMetrics queryMetrics;
+
+    public ResponseRouter(@Value("${kafka-messaging-example.reply.partition:-1}") int replyPartition,
+                          QueryMetrics queryMetrics) {
+        this.replyPartition = replyPartition;
+        this.queryMetrics = queryMetrics;
+    }
+
+    /**
+     * Returns the result topic partition that this node consumes its replies from, or -1 if it consumes the whole
+     * result topic.
+     */
+    public int replyPartition() {
+        return replyPartition;
+    }
+
+    /**
+     * Adds this node's reply address to the headers of an outgoing query, if it owns a reply partition.
+     *
+     * @param headers the headers of the query record
+     */
+    public void addReplyAddress(Headers headers) {
+        if (replyPartition >= 0) {
+            headers.add(KafkaHeaders.REPLY_TOPIC, RESULT_TOPIC_NAME.getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.REPLY_PARTITION,
+                    ByteBuffer.allocate(Integer.BYTES).putInt(replyPartition).array());
+        }
+    }
+
+    /**
+     * Registers a query so that responses carrying its id are handed to the given collector until the query is
+     * unregistered.
+     *
+     * @param queryId the id of the query that responses are correlated by
+     * @param responseCollector receives each response for the query
+     */
+    void register(String queryId, ResponseCollector responseCollector) {
+        pendingQueries.put(queryId, responseCollector);
+    }
+
+    /**
+     * Stops routing responses to the query with the given id.  Responses that arrive afterward are dropped.
+     *
+     * @param queryId the id of the query to unregister
+     */
+    void unregister(String queryId) {
+        pendingQueries.remove(queryId);
+    }
+
+    /**
+     * Re-checks the completion policy of every pending query, for when the set of live responders changes.
+     */
+    void reevaluatePending() {
+        pendingQueries.values().forEach(ResponseCollector::reevaluate);
+    }
+
+    /**
+     * Hands a response from the result topic to the query waiting for it, if any.  A response that no query is
+     * waiting for is counted as dropped only when this node owns a reply partition, since every response there was
+     * addressed to this node.  Without one, this node also reads the responses to every other node's queries, which
+     * are expected to go unmatched.
+     *
+     * @return true if a query was waiting for the response
+     */
+    public boolean routeResponse(SimpleResponse simpleResponse) {
+        ResponseCollector responseCollector = pendingQueries.get(simpleResponse.getId());
+        if (responseCollector == null) {
+            if (replyPartition >= 0) {
+                queryMetrics.recordDroppedResponse();
+                log.debug("Dropping response for unknown or completed query: {}", simpleResponse.getId());
+            }
+            return false;
+        }
+        responseCollector.accept(simpleResponse);
+        return true;
+    }
+}
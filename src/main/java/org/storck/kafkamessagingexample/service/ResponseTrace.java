@@ -0,0 +1,48 @@
+package org.storck.kafkamessagingexample.service;
+
+import java.time.Duration;
+
+/**
+ * The timeline of one responder's answer to a broadcast query, taken from the tracing headers on the query and the
+ * response.  Timestamps are epoch milliseconds from the clocks of the nodes that recorded them, so the dispatch and
+ * return legs include any skew between the originating node's clock and the responder's.
+ *
+ * @param traceId the trace id shared by the query and its responses
+ * @param queryId the id of the query
+ * @param responderId the node id of the responder
+ * @param sentAt when the originating node sent the query
+ * @param receivedAt when the responder received the query
+ * @param respondedAt when the responder sent its response
+ * @param arrivedAt when the originating node received the response
+ */
+public record ResponseTrace(String traceId, String queryId, String responderId, long sentAt, long receivedAt,
+                            long respondedAt, long arrivedAt) {
+
+    /**
+     * Time from the query being sent until the responder received it.
+     */
+    public Duration dispatch() {
+        return Duration.ofMillis(receivedAt - sentAt);
+    }
+
+    /**
+     * Time the responder spent answering the query.
+     */
+    public Duration processing() {
+        return Duration.ofMillis(respondedAt - receivedAt);
+    }
+
+    /**
+     * Time from the response being sent until the originating node received it.
+     */
+    public Duration returnTrip() {
+        return Duration.ofMillis(arrivedAt - respondedAt);
+    }
+
+    /**
+     * Time from the query being sent until the response arrived, all measured on the originating node's clock.
+     */
+    public Duration total() {
+        return Duration.ofMillis(arrivedAt - sentAt);
+    }
+}
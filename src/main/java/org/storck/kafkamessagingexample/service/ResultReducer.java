@@ -0,0 +1,236 @@
+package org.storck.kafkamessagingexample.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Folds the results of a broadcast query into the response returned to the caller.  Each responder's results are
+ * accumulated as they arrive, so only the accumulator, and not every responder's results, is held while the query
+ * waits.  The local results are accumulated separately and combined ahead of the remote ones at the end.
+ * <p>
+ * Accumulators are mutable and are only ever used by one thread at a time.  Beans of this type are available to
+ * callers by bean name, alongside the built-in reducers.
+ *
+ * @param <A> the accumulator type
+ */
+public interface ResultReducer<A> {
+
+    /**
+     * Creates an empty accumulator.
+     */
+    A newAccumulator();
+
+    /**
+     * Folds one responder's results into the accumulator.
+     */
+    void accumulate(A accumulator, List<String> results);
+
+    /**
+     * Folds the second accumulator into the first, which keeps its results ahead of the second's, and returns the
+     * first.
+     */
+    A combine(A first, A second);
+
+    /**
+     * Produces the response from the accumulator.
+     */
+    List<String> finish(A accumulator);
+
+    /**
+     * Appends every result, in arrival order.  This is the unreduced response, and grows with the fan-out.
+     */
+    static ResultReducer<List<String>> concat() {
+        return new Concat();
+    }
+
+    /**
+     * Keeps the first occurrence of each distinct result.
+     */
+    static ResultReducer<Set<String>> dedup() {
+        return new Dedup();
+    }
+
+    /**
+     * Keeps the k greatest distinct results in natural order, greatest first, holding no more than k at a time.
+     */
+    static ResultReducer<PriorityQueue<String>> topK(int k) {
+        return new TopK(k);
+    }
+
+    /**
+     * Counts the results, and responds with the count alone.
+     */
+    static ResultReducer<long[]> count() {
+        return new Count();
+    }
+
+    /**
+     * Merges results of the form {@code key<separator>value} by key, responding with one result per key that lists
+     * each distinct value for it.  Results without the separator are deduplicated as they are.
+     */
+    static ResultReducer<Map<String, Set<String>>> mergeByKey(String separator) {
+        return new MergeByKey(separator);
+    }
+
+    record Concat() implements ResultReducer<List<String>> {
+
+        @Override
+        public List<String> newAccumulator() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void accumulate(List<String> accumulator, List<String> results) {
+            accumulator.addAll(results);
+        }
+
+        @Override
+        public List<String> combine(List<String> first, List<String> second) {
+            first.addAll(second);
+            return first;
+        }
+
+        @Override
+        public List<String> finish(List<String> accumulator) {
+            return accumulator;
+        }
+    }
+
+    record Dedup() implements ResultReducer<Set<String>> {
+
+        @Override
+        public Set<String> newAccumulator() {
+            return new LinkedHashSet<>();
+        }
+
+        @Override
+        public void accumulate(Set<String> accumulator, List<String> results) {
+            accumulator.addAll(results);
+        }
+
+        @Override
+        public Set<String> combine(Set<String> first, Set<String> second) {
+            first.addAll(second);
+            return first;
+        }
+
+        @Override
+        public List<String> finish(Set<String> accumulator) {
+            return List.copyOf(accumulator);
+        }
+    }
+
+    record TopK(int k) implements ResultReducer<PriorityQueue<String>> {
+
+        public TopK {
+            if (k < 1) {
+                throw new IllegalArgumentException("k must be at least 1: " + k);
+            }
+        }
+
+        @Override
+        public PriorityQueue<String> newAccumulator() {
+            return new PriorityQueue<>(k + 1);
+        }
+
+        @Override
+        public void accumulate(PriorityQueue<String> accumulator, List<String> results) {
+            results.forEach(result -> offer(accumulator, result));
+        }
+
+        @Override
+        public PriorityQueue<String> combine(PriorityQueue<String> first, PriorityQueue<String> second) {
+            second.forEach(result -> offer(first, result));
+            return first;
+        }
+
+        @Override
+        public List<String> finish(PriorityQueue<String> accumulator) {
+            List<String> topResults = new ArrayList<>(accumulator);
+            topResults.sort(Comparator.reverseOrder());
+            return topResults;
+        }
+
+        private void offer(PriorityQueue<String> accumulator, String result) {
+            if (accumulator.size() < k) {
+                if (!accumulator.contains(result)) {
+                    accumulator.add(result);
+                }
+            } else if (result.compareTo(accumulator.peek()) > 0 && !accumulator.contains(result)) {
+                accumulator.poll();
+                accumulator.add(result);
+            }
+        }
+    }
+
+    record Count() implements ResultReducer<long[]> {
+
+        @Override
+        public long[] newAccumulator() {
+            return new long[1];
+        }
+
+        @Override
+        public void accumulate(long[] accumulator, List<String> results) {
+            accumulator[0] += results.size();
+        }
+
+        @Override
+        public long[] combine(long[] first, long[] second) {
+            first[0] += second[0];
+            return first;
+        }
+
+        @Override
+        public List<String> finish(long[] accumulator) {
+            return List.of(Long.toString(accumulator[0]));
+        }
+    }
+
+    record MergeByKey(String separator) implements ResultReducer<Map<String, Set<String>>> {
+
+        @Override
+        public Map<String, Set<String>> newAccumulator() {
+            return new LinkedHashMap<>();
+        }
+
+        @Override
+        public void accumulate(Map<String, Set<String>> accumulator, List<String> results) {
+            for (String result : results) {
+                int separatorIndex = result.indexOf(separator);
+                if (separatorIndex < 0) {
+                    accumulator.putIfAbsent(result, null);
+                } else {
+                    accumulator.computeIfAbsent(result.substring(0, separatorIndex), key -> new LinkedHashSet<>())
+                            .add(result.substring(separatorIndex + separator.length()));
+                }
+            }
+        }
+
+        @Override
+        public Map<String, Set<String>> combine(Map<String, Set<String>> first, Map<String, Set<String>> second) {
+            second.forEach((key, values) -> {
+                if (values == null) {
+                    first.putIfAbsent(key, null);
+                } else {
+                    first.computeIfAbsent(key, ignored -> new LinkedHashSet<>()).addAll(values);
+                }
+            });
+            return first;
+        }
+
+        @Override
+        public List<String> finish(Map<String, Set<String>> accumulator) {
+            List<String> merged = new ArrayList<>(accumulator.size());
+            accumulator.forEach((key, values) ->
+                    merged.add(values == null ? key : key + separator + String.join(", ", values)));
+            return merged;
+        }
+    }
+}
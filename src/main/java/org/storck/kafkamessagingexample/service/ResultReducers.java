@@ -0,0 +1,47 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Looks up {@link ResultReducer}s by name: the built-in {@code concat}, {@code dedup}, {@code top-k}, {@code count}
+ * and {@code merge-by-key} reducers, and any {@code ResultReducer} beans by bean name.
+ */
+@Service
+public class ResultReducers {
+
+    public static final String CONCAT = "concat";
+
+    private static final String MERGE_BY_KEY_SEPARATOR = ": ";
+
+    private final Map<String, ResultReducer<?>> customReducers;
+
+    public ResultReducers(Map<String, ResultReducer<?>> customReducers) {
+        this.customReducers = Map.copyOf(customReducers);
+    }
+
+    /**
+     * Returns the reducer with the given name.
+     *
+     * @param name the name of a built-in reducer or of a reducer bean
+     * @param k the number of results kept by the {@code top-k} reducer
+     * @throws IllegalArgumentException if there is no reducer with the given name
+     */
+    public ResultReducer<?> resolve(String name, int k) {
+        return switch (name) {
+            case CONCAT -> ResultReducer.concat();
+            case "dedup" -> ResultReducer.dedup();
+            case "top-k" -> ResultReducer.topK(k);
+            case "count" -> ResultReducer.count();
+            case "merge-by-key" -> ResultReducer.mergeByKey(MERGE_BY_KEY_SEPARATOR);
+            default -> {
+                ResultReducer<?> reducer = customReducers.get(name);
+                if (reducer == null) {
+                    throw new IllegalArgumentException("Unknown result reducer: " + name);
+                }
+                yield reducer;
+            }
+        };
+    }
+}
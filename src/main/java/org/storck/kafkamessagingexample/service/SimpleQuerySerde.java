@@ -0,0 +1,110 @@
+package org.storck.kafkamessagingexample.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.stereotype.Service;
+import org.storck.kafkamessagingexample.config.WireFormatProperties;
+import org.storck.kafkamessagingexample.model.SimpleQuery;
+
+import java.io.IOException;
+
+/**
+ * Serializes {@link SimpleQuery}s in the {@link WireFormat} configured for the topic, and deserializes either
+ * format.
+ */
+@Service
+public class SimpleQuerySerde implements Serde<SimpleQuery> {
+
+    static final byte BINARY_VERSION = 3;
+
+    /**
+     * The version written for queries without a batch, which nodes that predate batches can still read.
+     */
+    private static final byte SINGLE_QUERY_VERSION = 2;
+
+    private final ObjectWriter jsonWriter;
+
+    private final ObjectReader jsonReader;
+
+    private final WireFormatProperties wireFormatProperties;
+
+    public SimpleQuerySerde(JsonMapper jsonMapper, WireFormatProperties wireFormatProperties) {
+        this.jsonWriter = jsonMapper.writerFor(SimpleQuery.class);
+        this.jsonReader = jsonMapper.readerFor(SimpleQuery.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.wireFormatProperties = wireFormatProperties;
+    }
+
+    @Override
+    public Serializer<SimpleQuery> serializer() {
+        return (topic, data) -> {
+            if (data == null) {
+                return null;
+            }
+            if (wireFormatProperties.forTopic(topic) == WireFormat.BINARY) {
+                return encode(data);
+            }
+            try {
+                return jsonWriter.writeValueAsBytes(data);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @Override
+    public Deserializer<SimpleQuery> deserializer() {
+        return (topic, data) -> {
+            if (data == null) {
+                return null;
+            }
+            if (BinaryEncoding.isBinary(data)) {
+                return decode(data);
+            }
+            try {
+                return jsonReader.readValue(data);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    static byte[] encode(SimpleQuery query) {
+        if (query.getBatch() == null) {
+            return new BinaryEncoding.Writer(64)
+                    .header(SINGLE_QUERY_VERSION)
+                    .writeString(query.getId())
+                    .writeString(query.getQuery())
+                    .writeString(query.getType())
+                    .toByteArray();
+        }
+        return new BinaryEncoding.Writer(64 + 32 * query.getBatch().size())
+                .header(BINARY_VERSION)
+                .writeString(query.getId())
+                .writeString(query.getQuery())
+                .writeString(query.getType())
+                .writeStrings(query.getBatch())
+                .toByteArray();
+    }
+
+    static SimpleQuery decode(byte[] data) {
+        BinaryEncoding.Reader reader = new BinaryEncoding.Reader(data);
+        byte version = reader.header();
+        SimpleQuery query = SimpleQuery.builder()
+                .id(reader.readString())
+                .query(reader.readString())
+                .build();
+        if (version >= 2) {
+            query.setType(reader.readString());
+        }
+        if (version >= 3) {
+            query.setBatch(reader.readStrings());
+        }
+        return query;
+    }
+}
@@ -1,28 +1,56 @@
 package org.storck.kafkamessagingexample.service;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serializer;
 import org.springframework.stereotype.Service;
+import org.storck.kafkamessagingexample.config.WireFormatProperties;
 import org.storck.kafkamessagingexample.model.SimpleResponse;
 
 import java.io.IOException;
 
+/**
+ * Serializes {@link SimpleResponse}s in the {@link WireFormat} configured for the topic, and deserializes either
+ * format.
+ */
 @Service
 public class SimpleResponseSerde implements Serde<SimpleResponse> {
 
-    private final JsonMapper jsonMapper;
+    static final byte BINARY_VERSION = 2;
 
-    public SimpleResponseSerde(JsonMapper jsonMapper) {
-        this.jsonMapper = jsonMapper;
+    /**
+     * The version written for responses without batch results, which nodes that predate batches can still read.
+     */
+    private static final byte SINGLE_RESPONSE_VERSION = 1;
+
+    private final ObjectWriter jsonWriter;
+
+    private final ObjectReader jsonReader;
+
+    private final WireFormatProperties wireFormatProperties;
+
+    public SimpleResponseSerde(JsonMapper jsonMapper, WireFormatProperties wireFormatProperties) {
+        this.jsonWriter = jsonMapper.writerFor(SimpleResponse.class);
+        this.jsonReader = jsonMapper.readerFor(SimpleResponse.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.wireFormatProperties = wireFormatProperties;
     }
 
     @Override
     public Serializer<SimpleResponse> serializer() {
         return (topic, data) -> {
+            if (data == null) {
+                return null;
+            }
+            if (wireFormatProperties.forTopic(topic) == WireFormat.BINARY) {
+                return encode(data);
+            }
             try {
-                return jsonMapper.writeValueAsBytes(data);
+                return jsonWriter.writeValueAsBytes(data);
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
@@ -32,11 +60,49 @@ public class SimpleResponseSerde implements Serde<SimpleResponse> {
     @Override
     public Deserializer<SimpleResponse> deserializer() {
         return (topic, data) -> {
+            if (data == null) {
+                return null;
+            }
+            if (BinaryEncoding.isBinary(data)) {
+                return decode(data);
+            }
             try {
-                return jsonMapper.readValue(data, SimpleResponse.class);
+                return jsonReader.readValue(data);
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
         };
     }
-}
\ No newline at end of file
+
+    static byte[] encode(SimpleResponse response) {
+        if (response.getBatchResults() == null) {
+            return new BinaryEncoding.Writer(256)
+                    .header(SINGLE_RESPONSE_VERSION)
+                    .writeString(response.getId())
+                    .writeString(response.getResponderId())
+                    .writeStrings(response.getResults())
+                    .toByteArray();
+        }
+        return new BinaryEncoding.Writer(256 * response.getBatchResults().size())
+                .header(BINARY_VERSION)
+                .writeString(response.getId())
+                .writeString(response.getResponderId())
+                .writeStrings(response.getResults())
+                .writeStringLists(response.getBatchResults())
+                .toByteArray();
+    }
+
+    static SimpleResponse decode(byte[] data) {
+        BinaryEncoding.Reader reader = new BinaryEncoding.Reader(data);
+        byte version = reader.header();
+        SimpleResponse response = SimpleResponse.builder()
+                .id(reader.readString())
+                .responderId(reader.readString())
+                .results(reader.readStrings())
+                .build();
+        if (version >= 2) {
+            response.setBatchResults(reader.readStringLists());
+        }
+        return response;
+    }
+}
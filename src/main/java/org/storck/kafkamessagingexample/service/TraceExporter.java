@@ -0,0 +1,11 @@
+package org.storck.kafkamessagingexample.service;
+
+/**
+ * Receives the {@link ResponseTrace} of each response to a query that this node broadcast.  Exporters are called on
+ * the result listener thread, so an exporter that sends traces to a collector should hand them off rather than
+ * block.
+ */
+public interface TraceExporter {
+
+    void export(ResponseTrace responseTrace);
+}
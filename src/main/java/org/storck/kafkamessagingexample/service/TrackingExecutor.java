@@ -0,0 +1,61 @@
+package org.storck.kafkamessagingexample.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Submits one query's handler runs to an executor and signals when every one of them has returned, including runs
+ * whose results were abandoned because they exceeded their timeout.  Submissions are open until
+ * {@link #closeSubmissions()} is called, and {@link #finished()} cannot complete before then.
+ */
+class TrackingExecutor implements Executor {
+
+    private final Executor delegate;
+
+    private final AtomicInteger outstanding = new AtomicInteger(1);
+
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    TrackingExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        outstanding.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * Marks that no more tasks will be submitted.
+     */
+    void closeSubmissions() {
+        release();
+    }
+
+    /**
+     * Returns a future that completes once submissions are closed and every submitted task has returned.
+     */
+    CompletableFuture<Void> finished() {
+        return finished;
+    }
+
+    private void release() {
+        if (outstanding.decrementAndGet() == 0) {
+            finished.complete(null);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.storck.kafkamessagingexample.service;
+
+/**
+ * Encodings for {@link org.storck.kafkamessagingexample.model.SimpleQuery} and
+ * {@link org.storck.kafkamessagingexample.model.SimpleResponse} record values.  Deserializers read both formats
+ * regardless of which one is configured, so nodes can be migrated from one to the other one at a time.
+ */
+public enum WireFormat {
+
+    /**
+     * Jackson-encoded JSON, readable by nodes that predate the binary format.
+     */
+    JSON,
+
+    /**
+     * Compact length-prefixed binary encoding that starts with {@link BinaryEncoding#MAGIC} and a version byte.
+     */
+    BINARY
+}
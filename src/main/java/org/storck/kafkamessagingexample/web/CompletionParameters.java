@@ -0,0 +1,52 @@
+package org.storck.kafkamessagingexample.web;
+
+import io.swagger.v3.oas.annotations.Parameter;
+import org.storck.kafkamessagingexample.service.CompletionPolicy;
+import org.storck.kafkamessagingexample.service.ResponderMembership;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optional request parameters that let a caller complete a broadcast query before its timeout.
+ */
+public record CompletionParameters(
+        @Parameter(description = "Complete after the first remote response")
+        Boolean first,
+        @Parameter(description = "Complete after this many remote responders have replied")
+        Integer minResponses,
+        @Parameter(description = "Complete after all of these remote responders have replied")
+        Set<String> responders,
+        @Parameter(description = "Complete after this fraction of the expected responders have replied")
+        Double quorum,
+        @Parameter(description = "Expected remote responders for quorum; defaults to the live count")
+        Integer expectedResponders,
+        @Parameter(description = "Complete after every live remote responder has replied")
+        Boolean allLive) {
+
+    /**
+     * Builds a policy that completes as soon as any of the requested conditions is met, and waits for the full
+     * timeout when none is requested.
+     */
+    public CompletionPolicy toPolicy(ResponderMembership membership) {
+        List<CompletionPolicy> policies = new ArrayList<>();
+        if (Boolean.TRUE.equals(first)) {
+            policies.add(CompletionPolicy.first());
+        }
+        if (minResponses != null) {
+            policies.add(CompletionPolicy.responses(minResponses));
+        }
+        if (responders != null && !responders.isEmpty()) {
+            policies.add(CompletionPolicy.responders(responders));
+        }
+        if (quorum != null) {
+            int expected = expectedResponders != null ? expectedResponders : membership.expectedFanOut();
+            policies.add(CompletionPolicy.quorum(quorum, expected));
+        }
+        if (Boolean.TRUE.equals(allLive)) {
+            policies.add(CompletionPolicy.allLive(membership));
+        }
+        return CompletionPolicy.anyOf(policies);
+    }
+}
@@ -1,37 +1,150 @@
 package org.storck.kafkamessagingexample.web;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.storck.kafkamessagingexample.handler.SystemInfoQueryHandler;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+import org.storck.kafkamessagingexample.service.CompletionPolicy;
+import org.storck.kafkamessagingexample.service.QueryAdmission;
+import org.storck.kafkamessagingexample.service.QueryRejectedException;
+import org.storck.kafkamessagingexample.service.QueryResultCache;
 import org.storck.kafkamessagingexample.service.QueryService;
+import org.storck.kafkamessagingexample.service.ResponderMembership;
+import org.storck.kafkamessagingexample.service.ResultReducer;
+import org.storck.kafkamessagingexample.service.ResultReducers;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/v1/query")
 public class QueryController {
 
+    private static final Duration QUERY_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final Duration STREAM_TIMEOUT = QUERY_TIMEOUT.plusSeconds(5);
+
+    private static final int MAX_BATCH_SIZE = 100;
+
     private final QueryService queryService;
 
-    public QueryController(QueryService queryService) {
+    private final ResponderMembership responderMembership;
+
+    private final QueryResultCache queryResultCache;
+
+    private final ResultReducers resultReducers;
+
+    private final QueryAdmission queryAdmission;
+
+    private final boolean batchEnabled;
+
+    public QueryController(QueryService queryService, ResponderMembership responderMembership,
+                           QueryResultCache queryResultCache, ResultReducers resultReducers,
+                           QueryAdmission queryAdmission,
+                           @Value("${kafka-messaging-example.batch.enabled:false}") boolean batchEnabled) {
         this.queryService = queryService;
+        this.responderMembership = responderMembership;
+        this.queryResultCache = queryResultCache;
+        this.resultReducers = resultReducers;
+        this.queryAdmission = queryAdmission;
+        this.batchEnabled = batchEnabled;
     }
     
     @PostMapping("/process")
     @Operation(summary = "Process a local query", description = "This method processes a local query")
     @ApiResponse(responseCode = "200", description = "Successful operation")
     @PreAuthorize("hasAnyAuthority('Auth1','Auth4')")
-    public ResponseEntity<List<String>> processLocalQuery(@RequestBody String query) throws Exception {
-        List<String> response = queryService.processLocalQuery(query, Duration.ofSeconds(5));
-        return new ResponseEntity<>(response, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<String>>> processLocalQuery(
+            @RequestBody String query,
+            @Parameter(description = "Query type, which selects the handler that answers it")
+            @RequestParam(defaultValue = SystemInfoQueryHandler.TYPE) String type,
+            @ParameterObject CompletionParameters completion,
+            @Parameter(description = "How the results are reduced: concat, dedup, top-k, count, merge-by-key, "
+                    + "or the name of a custom reducer")
+            @RequestParam(defaultValue = ResultReducers.CONCAT) String reducer,
+            @Parameter(description = "The number of results kept by the top-k reducer")
+            @RequestParam(defaultValue = "10") int k,
+            @Parameter(description = "Set to false to skip cached results for this query")
+            @RequestParam(defaultValue = "true") boolean cache) {
+        CompletionPolicy completionPolicy = completion.toPolicy(responderMembership);
+        ResultReducer<?> resultReducer = resultReducers.resolve(reducer, k);
+        return queryResultCache.getOrLoad(type, query, completionPolicy, resultReducer, cache,
+                        () -> queryAdmission.admit(completionPolicy, () -> queryService.collectLocalQueryAsync(type,
+                                query, QUERY_TIMEOUT, completionPolicy, resultReducer)))
+                .thenApply(response -> new ResponseEntity<>(response, HttpStatus.OK));
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Process a batch of local queries",
+            description = "This method processes a batch of local queries of one type with a single broadcast, "
+                    + "and returns the results of each query in the order of the batch")
+    @ApiResponse(responseCode = "200", description = "Successful operation")
+    @PreAuthorize("hasAnyAuthority('Auth1','Auth4')")
+    public CompletableFuture<ResponseEntity<List<List<String>>>> processLocalBatch(
+            @RequestBody List<String> queries,
+            @Parameter(description = "Query type of every query in the batch, which selects the handler")
+            @RequestParam(defaultValue = SystemInfoQueryHandler.TYPE) String type,
+            @ParameterObject CompletionParameters completion,
+            @Parameter(description = "How the results of each query are reduced: concat, dedup, top-k, count, "
+                    + "merge-by-key, or the name of a custom reducer")
+            @RequestParam(defaultValue = ResultReducers.CONCAT) String reducer,
+            @Parameter(description = "The number of results kept by the top-k reducer")
+            @RequestParam(defaultValue = "10") int k) {
+        if (!batchEnabled) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Batch queries are not enabled");
+        }
+        if (queries.isEmpty() || queries.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch must hold between 1 and " + MAX_BATCH_SIZE + " queries");
+        }
+        CompletionPolicy completionPolicy = completion.toPolicy(responderMembership);
+        ResultReducer<?> resultReducer = resultReducers.resolve(reducer, k);
+        return queryAdmission.admit(completionPolicy, () -> queryService.processLocalBatchAsync(type, queries,
+                        QUERY_TIMEOUT, completionPolicy, resultReducer))
+                .thenApply(response -> new ResponseEntity<>(response, HttpStatus.OK));
+    }
+
+    @PostMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream a local query",
+            description = "This method processes a local query and streams each responder's results as they arrive")
+    @ApiResponse(responseCode = "200", description = "Successful operation")
+    @PreAuthorize("hasAnyAuthority('Auth1','Auth4')")
+    public SseEmitter streamLocalQuery(
+            @RequestBody String query,
+            @Parameter(description = "Query type, which selects the handler that answers it")
+            @RequestParam(defaultValue = SystemInfoQueryHandler.TYPE) String type,
+            @ParameterObject CompletionParameters completion) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+        CompletionPolicy completionPolicy = completion.toPolicy(responderMembership);
+        queryAdmission.admit(completionPolicy, () -> queryService.streamLocalQuery(type, query, QUERY_TIMEOUT,
+                        completionPolicy, response -> send(emitter, response)))
+                .whenComplete((ignored, ex) -> {
+                    if (ex == null) {
+                        emitter.complete();
+                    } else {
+                        emitter.completeWithError(ex);
+                    }
+                });
+        return emitter;
     }
 
     @GetMapping("/check")
@@ -39,4 +152,28 @@ public class QueryController {
     public ResponseEntity<String> checkSecurity() {
         return new ResponseEntity<>("Result: success", HttpStatus.OK);
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(QueryRejectedException.class)
+    public ResponseEntity<String> handleQueryRejected(QueryRejectedException e) {
+        HttpStatus status = e.getReason() == QueryRejectedException.Reason.QUEUE_FULL
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+        return new ResponseEntity<>(e.getMessage(), status);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    private static void send(SseEmitter emitter, SimpleResponse response) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(response.getResponderId())
+                    .name("response")
+                    .data(response, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            log.debug("Client stopped listening for streamed query results", e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.storck.kafkamessagingexample.auth;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.storck.kafkamessagingexample.config.AuthProperties;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AuthRequestFactoriesTest {
+
+    private final AuthProperties.Http http = new AuthProperties.Http();
+
+    private final SSLContext sslContext;
+
+    AuthRequestFactoriesTest() throws Exception {
+        sslContext = SSLContext.getDefault();
+        http.setMaxConnections(7);
+        http.setMaxConnectionsPerRoute(3);
+        http.setConnectTimeout(Duration.ofMillis(250));
+        http.setReadTimeout(Duration.ofMillis(750));
+        http.setConnectionTimeToLive(Duration.ofSeconds(90));
+    }
+
+    @Test
+    void poolSizesReachTheConnectionManager() throws Exception {
+        try (PoolingHttpClientConnectionManager connectionManager =
+                     AuthRequestFactories.connectionManager(http, sslContext)) {
+            assertEquals(7, connectionManager.getMaxTotal());
+            assertEquals(3, connectionManager.getDefaultMaxPerRoute());
+        }
+    }
+
+    @Test
+    void pooledConnectionsUseTheConfiguredTimeouts() {
+        ConnectionConfig connectionConfig = AuthRequestFactories.connectionConfig(http);
+
+        assertEquals(250, connectionConfig.getConnectTimeout().toMilliseconds());
+        assertEquals(750, connectionConfig.getSocketTimeout().toMilliseconds());
+        assertEquals(90_000, connectionConfig.getTimeToLive().toMilliseconds());
+        assertEquals(750, AuthRequestFactories.requestConfig(http).getResponseTimeout().toMilliseconds());
+    }
+
+    @Test
+    void jdkClientUsesHttp2AndTheConfiguredConnectTimeout() {
+        HttpClient httpClient = AuthRequestFactories.jdkHttpClient(http, sslContext);
+
+        assertEquals(HttpClient.Version.HTTP_2, httpClient.version());
+        assertEquals(Optional.of(Duration.ofMillis(250)), httpClient.connectTimeout());
+        assertSame(sslContext, httpClient.sslContext());
+    }
+
+    @Test
+    void jdkRequestFactoryUsesTheConfiguredReadTimeout() {
+        JdkClientHttpRequestFactory requestFactory =
+                assertInstanceOf(JdkClientHttpRequestFactory.class, AuthRequestFactories.jdk(http, sslContext));
+
+        assertEquals(Duration.ofMillis(750), ReflectionTestUtils.getField(requestFactory, "readTimeout"));
+    }
+
+    @Test
+    void http2SwitchSelectsTheJdkClient() {
+        http.setHttp2(true);
+
+        assertInstanceOf(JdkClientHttpRequestFactory.class, AuthRequestFactories.create(http, sslContext));
+    }
+
+    @Test
+    void pooledClientIsTheDefault() throws Exception {
+        assertInstanceOf(HttpComponentsClientHttpRequestFactory.class,
+                AuthRequestFactories.create(new AuthProperties.Http(), sslContext)).destroy();
+    }
+}
@@ -0,0 +1,91 @@
+package org.storck.kafkamessagingexample.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, OPEN_DURATION, nanoTime::get);
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.record(false);
+        }
+    }
+
+    private void waitOutOpenDuration() {
+        nanoTime.addAndGet(OPEN_DURATION.toNanos());
+    }
+
+    @Test
+    void staysClosedBelowTheFailureThreshold() {
+        fail(2);
+
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void successResetsTheRunOfFailures() {
+        fail(2);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.record(true);
+        fail(2);
+
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void opensAtTheFailureThresholdAndRejectsCallsWhileOpen() {
+        fail(3);
+
+        assertFalse(circuitBreaker.tryAcquire());
+        nanoTime.addAndGet(OPEN_DURATION.toNanos() - 1);
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void letsOneTrialThroughOnceTheOpenDurationHasPassed() {
+        fail(3);
+        waitOutOpenDuration();
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void closesWhenTheTrialSucceeds() {
+        fail(3);
+        waitOutOpenDuration();
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.record(true);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void reopensForAnotherOpenDurationWhenTheTrialFails() {
+        fail(3);
+        waitOutOpenDuration();
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.record(false);
+
+        assertFalse(circuitBreaker.tryAcquire());
+        nanoTime.addAndGet(OPEN_DURATION.toNanos() - 1);
+        assertFalse(circuitBreaker.tryAcquire());
+        nanoTime.addAndGet(1);
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+}
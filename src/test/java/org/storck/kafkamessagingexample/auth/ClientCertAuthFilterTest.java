@@ -0,0 +1,131 @@
+package org.storck.kafkamessagingexample.auth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.storck.kafkamessagingexample.service.ManualClock;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClientCertAuthFilterTest {
+
+    /**
+     * Self-signed certificates for {@code O=Test,CN=client-a} and {@code O=Test,CN=client-b}, as the proxy forwards
+     * them: Base64-encoded DER.
+     */
+    private static final String CERTIFICATE_A =
+            "MIIBmjCCAUGgAwIBAgIUZfvd1ADHhwEamnRoeE1332NkItcwCgYIKoZIzj0EAwIwIjERMA8GA1UEAwwIY2xpZW50LWExDTALBgNV"
+            + "BAoMBFRlc3QwIBcNMjYxMDE3MjMwNjQ0WhgPMjEyNjA5MjMyMzA2NDRaMCIxETAPBgNVBAMMCGNsaWVudC1hMQ0wCwYDVQQKDARU"
+            + "ZXN0MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEN+XUMBDV9fBv7CygkeemwPd70lloSQHtsS9htIPa//Ia0iks4xy699Q+1HMG"
+            + "hxZndLZBVhFuZ+dyPTPVM6B4r6NTMFEwHQYDVR0OBBYEFMkiufN2EZlk+dUa7JSi1uda8Nt3MB8GA1UdIwQYMBaAFMkiufN2EZlk"
+            + "+dUa7JSi1uda8Nt3MA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDRwAwRAIgRozv9GGm1qbxIpORLQDGc+Nvd3Pq44LUHybz"
+            + "gvWJvyQCIFWgkBn3u0J5i/IxKPNX3lEMGm+ill4GNq/VMjAYleGj";
+
+    private static final String CERTIFICATE_B =
+            "MIIBmzCCAUGgAwIBAgIUZewrQspIdpFWFocV5L/RmEUdel8wCgYIKoZIzj0EAwIwIjERMA8GA1UEAwwIY2xpZW50LWIxDTALBgNV"
+            + "BAoMBFRlc3QwIBcNMjYxMDE3MjMwNjQ0WhgPMjEyNjA5MjMyMzA2NDRaMCIxETAPBgNVBAMMCGNsaWVudC1iMQ0wCwYDVQQKDARU"
+            + "ZXN0MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEk6VkvXGpc8CMpiApR29tC/hY+UfgRu7VqiBfNxOh3769R266qrPUrVI+8khS"
+            + "o5udG2q+tN3CNEuX+aurVbG9oaNTMFEwHQYDVR0OBBYEFBCRiLLqVq1rLWkATiyZEq5NaITGMB8GA1UdIwQYMBaAFBCRiLLqVq1r"
+            + "LWkATiyZEq5NaITGMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDSAAwRQIgSwy42vrUAxJqHYRve1LBbhrfY/cKlImWqQ1X"
+            + "qh/WZIgCIQDp21JUhE6kZQ9cAnOi0GIqKLkbuEnY1v2IhMx3vVJpEw==";
+
+    private static final String PRINCIPAL_A = "O=Test,CN=client-a::O=Test,CN=client-a";
+
+    private static final long NOT_AFTER_A = notAfter(CERTIFICATE_A);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ManualClock clock = new ManualClock(NOT_AFTER_A - 60_000);
+
+    private final ClientCertAuthFilter filter = new ClientCertAuthFilter(100, meterRegistry, clock);
+
+    private static long notAfter(String certificate) {
+        try {
+            return ((X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(certificate))))
+                    .getNotAfter().getTime();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Object principal(String certificate) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (certificate != null) {
+            request.addHeader(ClientCertAuthFilter.CLIENT_CERT_HEADER, certificate);
+        }
+        return filter.getPreAuthenticatedPrincipal(request);
+    }
+
+    private long parses() {
+        return meterRegistry.get("auth.client-cert.parse").timer().count();
+    }
+
+    @Test
+    void requestWithoutACertificateHasNoPrincipal() {
+        assertNull(principal(null));
+        assertEquals(0, parses());
+    }
+
+    @Test
+    void principalIsTheSubjectAndIssuer() {
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+    }
+
+    @Test
+    void repeatedCertificateIsParsedOnce() {
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+        assertEquals(1, parses());
+    }
+
+    @Test
+    void eachCertificateIsCachedUnderItsOwnDigest() {
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+        assertEquals("O=Test,CN=client-b::O=Test,CN=client-b", principal(CERTIFICATE_B));
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+        assertEquals(2, parses());
+    }
+
+    @Test
+    void cachedPrincipalExpiresWithItsCertificate() {
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+        clock.advance(59_999);
+        assertEquals(PRINCIPAL_A, principal(CERTIFICATE_A));
+        assertEquals(1, parses());
+
+        clock.advance(2);
+
+        assertNull(principal(CERTIFICATE_A));
+        assertEquals(2, parses());
+    }
+
+    @Test
+    void expiredCertificateIsRejected() {
+        clock.advance(60_001);
+
+        assertNull(principal(CERTIFICATE_A));
+        assertNull(principal(CERTIFICATE_A));
+    }
+
+    @Test
+    void headerThatIsNotBase64FailsToParse() {
+        assertThrows(IllegalArgumentException.class, () -> principal("not a certificate!"));
+    }
+
+    @Test
+    void headerThatIsNotACertificateFailsToParseEveryTime() {
+        String notACertificate = Base64.getEncoder().encodeToString(new byte[] {1, 2, 3});
+
+        assertThrows(IllegalArgumentException.class, () -> principal(notACertificate));
+        assertThrows(IllegalArgumentException.class, () -> principal(notACertificate));
+        assertEquals(2, parses());
+    }
+}
@@ -0,0 +1,178 @@
+package org.storck.kafkamessagingexample.auth;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.storck.kafkamessagingexample.config.AuthProperties;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExternalAuthenticationUserDetailsServiceTest {
+
+    private static final PreAuthenticatedAuthenticationToken TOKEN =
+            new PreAuthenticatedAuthenticationToken("CN=client::CN=issuer", "NOT_APPLICABLE");
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @AfterEach
+    void shutDownExecutor() {
+        executor.shutdownNow();
+    }
+
+    private ExternalAuthenticationUserDetailsService service(AuthorizationClient authorizationClient,
+                                                             Duration refreshAfter, int failureThreshold) {
+        return service(authorizationClient, executor, refreshAfter, failureThreshold);
+    }
+
+    private ExternalAuthenticationUserDetailsService service(AuthorizationClient authorizationClient,
+                                                             Executor lookupExecutor, Duration refreshAfter,
+                                                             int failureThreshold) {
+        AuthProperties.UserDetailsCache cacheSettings = new AuthProperties.UserDetailsCache();
+        cacheSettings.setRefreshAfter(refreshAfter);
+        cacheSettings.setLookupTimeout(Duration.ofSeconds(5));
+        return new ExternalAuthenticationUserDetailsService(authorizationClient, lookupExecutor, cacheSettings,
+                new CircuitBreaker(failureThreshold, Duration.ofMinutes(1), nanoTime::get), nanoTime::get);
+    }
+
+    /**
+     * Waits until every thread is parked, which the lookup threads only are once they are blocked on the cached
+     * future for their principal.
+     */
+    private static void awaitParked(List<Thread> threads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Lookups did not all reach the cache");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Runs tasks immediately until told to defer them, and then holds them until they are run explicitly.
+     */
+    private static class DeferringExecutor implements Executor {
+
+        private final Queue<Runnable> deferred = new ArrayDeque<>();
+
+        private boolean deferring;
+
+        @Override
+        public void execute(Runnable task) {
+            if (deferring) {
+                deferred.add(task);
+            } else {
+                task.run();
+            }
+        }
+
+        void runDeferred() {
+            Runnable task;
+            while ((task = deferred.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static List<String> authorities(UserDetails userDetails) {
+        return userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).sorted().toList();
+    }
+
+    @Test
+    void localStandInGrantsConfiguredAuthorities() {
+        ExternalAuthenticationUserDetailsService service = service(
+                new LocalAuthorizationClient(List.of("Auth1", "Auth4")), Duration.ofMinutes(10), 5);
+        UserDetails userDetails = service.loadUserDetails(TOKEN);
+        assertEquals("CN=client", userDetails.getUsername());
+        assertEquals(List.of("Auth1", "Auth4"), authorities(userDetails));
+    }
+
+    @Test
+    void concurrentLookupsOfOnePrincipalShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExternalAuthenticationUserDetailsService service = service((subject, issuer) -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of("Auth1");
+        }, Duration.ofMinutes(10), 5);
+
+        List<CompletableFuture<UserDetails>> lookups = new ArrayList<>();
+        List<Thread> lookupThreads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            CompletableFuture<UserDetails> lookup = new CompletableFuture<>();
+            Thread lookupThread = new Thread(() -> lookup.complete(service.loadUserDetails(TOKEN)));
+            lookupThread.start();
+            lookups.add(lookup);
+            lookupThreads.add(lookupThread);
+        }
+        awaitParked(lookupThreads);
+        release.countDown();
+
+        for (CompletableFuture<UserDetails> lookup : lookups) {
+            assertEquals(List.of("Auth1"), authorities(lookup.get(5, TimeUnit.SECONDS)));
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void staleDetailsAreServedWhileRefreshing() {
+        AtomicInteger calls = new AtomicInteger();
+        DeferringExecutor lookupExecutor = new DeferringExecutor();
+        ExternalAuthenticationUserDetailsService service = service(
+                (subject, issuer) -> List.of(calls.incrementAndGet() == 1 ? "Auth1" : "Auth2"),
+                lookupExecutor, Duration.ofMinutes(10), 5);
+        assertEquals(List.of("Auth1"), authorities(service.loadUserDetails(TOKEN)));
+
+        lookupExecutor.deferring = true;
+        nanoTime.addAndGet(Duration.ofMinutes(10).plusNanos(1).toNanos());
+        assertEquals(List.of("Auth1"), authorities(service.loadUserDetails(TOKEN)));
+        assertEquals(List.of("Auth1"), authorities(service.loadUserDetails(TOKEN)));
+        assertEquals(1, calls.get());
+
+        lookupExecutor.runDeferred();
+        assertEquals(2, calls.get());
+        assertEquals(List.of("Auth2"), authorities(service.loadUserDetails(TOKEN)));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void openCircuitFailsLookupsWithoutCallingTheService() {
+        AtomicInteger calls = new AtomicInteger();
+        ExternalAuthenticationUserDetailsService service = service((subject, issuer) -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Authorization service unavailable");
+        }, Duration.ofMinutes(10), 2);
+
+        assertThrows(AuthenticationServiceException.class, () -> service.loadUserDetails(TOKEN));
+        assertThrows(AuthenticationServiceException.class, () -> service.loadUserDetails(TOKEN));
+        AuthenticationServiceException e =
+                assertThrows(AuthenticationServiceException.class, () -> service.loadUserDetails(TOKEN));
+        assertEquals(2, calls.get());
+        assertEquals("Authorization service circuit is open", e.getCause().getMessage());
+    }
+}
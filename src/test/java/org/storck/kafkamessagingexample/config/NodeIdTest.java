@@ -0,0 +1,20 @@
+package org.storck.kafkamessagingexample.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NodeIdTest {
+
+    @Test
+    void rejectsMissingOrBlankIds() {
+        assertThrows(IllegalArgumentException.class, () -> new NodeId(null));
+        assertThrows(IllegalArgumentException.class, () -> new NodeId(" "));
+    }
+
+    @Test
+    void printsAsItsValue() {
+        assertEquals("node-1", new NodeId("node-1").toString());
+    }
+}
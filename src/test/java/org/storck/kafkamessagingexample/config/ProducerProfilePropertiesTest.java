@@ -0,0 +1,90 @@
+package org.storck.kafkamessagingexample.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProducerProfilePropertiesTest {
+
+    private static ProducerProfileProperties bind(Map<String, String> properties) {
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bind("kafka-messaging-example.producer", ProducerProfileProperties.class)
+                .orElseGet(ProducerProfileProperties::new);
+    }
+
+    @Test
+    void templateWithoutProfileUsesClientDefaults() {
+        ProducerProfileProperties properties = bind(Map.of());
+        assertTrue(properties.producerConfig("simple-query").isEmpty());
+    }
+
+    @Test
+    void templateUsesBuiltInPreset() {
+        ProducerProfileProperties properties = bind(Map.of(
+                "kafka-messaging-example.producer.templates.simple-response", "throughput"));
+        Map<String, Object> config = properties.producerConfig("simple-response");
+        assertEquals(20, config.get(ProducerConfig.LINGER_MS_CONFIG));
+        assertEquals(128 * 1024, config.get(ProducerConfig.BATCH_SIZE_CONFIG));
+        assertEquals("lz4", config.get(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+        assertEquals(true, config.get(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG));
+        assertEquals("all", config.get(ProducerConfig.ACKS_CONFIG));
+    }
+
+    @Test
+    void configuredProfileOverridesPresetKeyByKey() {
+        ProducerProfileProperties properties = bind(Map.of(
+                "kafka-messaging-example.producer.profiles.throughput.linger-ms", "50",
+                "kafka-messaging-example.producer.profiles.throughput.compression-type", "zstd",
+                "kafka-messaging-example.producer.templates.simple-response", "throughput"));
+        Map<String, Object> config = properties.producerConfig("simple-response");
+        assertEquals(Map.of(
+                ProducerConfig.LINGER_MS_CONFIG, 50,
+                ProducerConfig.BATCH_SIZE_CONFIG, 128 * 1024,
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd",
+                ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true,
+                ProducerConfig.ACKS_CONFIG, "all"), config);
+    }
+
+    @Test
+    void overridingOnePresetLeavesTheOtherUnchanged() {
+        ProducerProfileProperties properties = bind(Map.of(
+                "kafka-messaging-example.producer.profiles.throughput.acks", "1",
+                "kafka-messaging-example.producer.templates.simple-query", "latency"));
+        assertEquals(ProducerProfileProperties.LATENCY_PRESET.toProducerConfig(),
+                properties.producerConfig("simple-query"));
+    }
+
+    @Test
+    void overridingAPresetDoesNotChangeTheBuiltInPreset() {
+        ProducerProfileProperties properties = bind(Map.of(
+                "kafka-messaging-example.producer.profiles.latency.linger-ms", "5"));
+        assertEquals(5, properties.profile(ProducerProfileProperties.LATENCY).getLingerMs());
+        assertEquals(0, ProducerProfileProperties.LATENCY_PRESET.getLingerMs());
+    }
+
+    @Test
+    void customProfileIsBoundFromProperties() {
+        ProducerProfileProperties properties = bind(Map.of(
+                "kafka-messaging-example.producer.profiles.bulk.batch-size", "1048576",
+                "kafka-messaging-example.producer.profiles.bulk.acks", "all",
+                "kafka-messaging-example.producer.templates.simple-query", "bulk"));
+        Map<String, Object> config = properties.producerConfig("simple-query");
+        assertEquals(Map.of(
+                ProducerConfig.BATCH_SIZE_CONFIG, 1048576,
+                ProducerConfig.ACKS_CONFIG, "all"), config);
+    }
+
+    @Test
+    void unknownProfileIsRejected() {
+        ProducerProfileProperties properties = bind(Map.of(
+                "kafka-messaging-example.producer.templates.simple-query", "missing"));
+        assertThrows(IllegalArgumentException.class, () -> properties.producerConfig("simple-query"));
+    }
+}
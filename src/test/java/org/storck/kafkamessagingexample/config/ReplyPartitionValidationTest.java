@@ -0,0 +1,67 @@
+package org.storck.kafkamessagingexample.config;
+
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
+
+class ReplyPartitionValidationTest {
+
+    private final KafkaAdmin kafkaAdmin = mock(KafkaAdmin.class);
+
+    private void resultTopicHasPartitions(int partitions) {
+        List<TopicPartitionInfo> partitionInfos = IntStream.range(0, partitions)
+                .mapToObj(partition -> new TopicPartitionInfo(partition, null, List.of(), List.of()))
+                .toList();
+        when(kafkaAdmin.describeTopics(RESULT_TOPIC_NAME))
+                .thenReturn(Map.of(RESULT_TOPIC_NAME, new TopicDescription(RESULT_TOPIC_NAME, false, partitionInfos)));
+    }
+
+    private void describeFailsWith(Throwable cause) {
+        when(kafkaAdmin.describeTopics(RESULT_TOPIC_NAME))
+                .thenThrow(new KafkaException("Failed to obtain topic descriptions", new ExecutionException(cause)));
+    }
+
+    @Test
+    void partitionOfTheExistingTopicIsAccepted() {
+        resultTopicHasPartitions(3);
+
+        assertDoesNotThrow(() -> KafkaConfiguration.validateReplyPartition(2, kafkaAdmin, 1));
+    }
+
+    @Test
+    void partitionBeyondTheExistingTopicIsRejected() {
+        resultTopicHasPartitions(3);
+
+        assertThrows(IllegalStateException.class, () -> KafkaConfiguration.validateReplyPartition(3, kafkaAdmin, 8));
+    }
+
+    @Test
+    void topicThatDoesNotExistYetIsCheckedByItsConfiguredPartitions() {
+        describeFailsWith(new UnknownTopicOrPartitionException("unknown"));
+
+        assertDoesNotThrow(() -> KafkaConfiguration.validateReplyPartition(3, kafkaAdmin, 4));
+        assertThrows(IllegalStateException.class, () -> KafkaConfiguration.validateReplyPartition(4, kafkaAdmin, 4));
+    }
+
+    @Test
+    void unreachableBrokerSkipsTheCheck() {
+        describeFailsWith(new TimeoutException("timed out"));
+
+        assertDoesNotThrow(() -> KafkaConfiguration.validateReplyPartition(100, kafkaAdmin, 1));
+    }
+}
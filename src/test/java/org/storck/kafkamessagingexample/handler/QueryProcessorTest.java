@@ -0,0 +1,238 @@
+package org.storck.kafkamessagingexample.handler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryProcessorTest {
+
+    private static final Duration LONG_TIMEOUT = Duration.ofMinutes(1);
+
+    private final DeferringExecutor executor = new DeferringExecutor();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseBlockedHandlers() {
+        release.countDown();
+    }
+
+    private static QueryProcessor processor(Duration defaultTimeout, QueryHandler... queryHandlers) {
+        return new QueryProcessor(List.of(queryHandlers), "echo", defaultTimeout, 100, LONG_TIMEOUT);
+    }
+
+    @Test
+    void dispatchesQueriesByType() throws Exception {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT,
+                new StubHandler("echo", false, Optional.empty(), query -> List.of(query)),
+                new StubHandler("upper", false, Optional.empty(), query -> List.of(query.toUpperCase())));
+
+        CompletableFuture<List<String>> upper = queryProcessor.processAsync("upper", "q", executor);
+        CompletableFuture<List<String>> echo = queryProcessor.processAsync(null, "q", executor);
+        executor.runDeferred();
+
+        assertEquals(List.of("Q"), upper.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("q"), echo.get(5, TimeUnit.SECONDS));
+        assertTrue(queryProcessor.supports("upper"));
+        assertTrue(queryProcessor.supports(null));
+        assertFalse(queryProcessor.supports("lower"));
+    }
+
+    @Test
+    void rejectsQueriesOfAnUnknownType() {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT,
+                new StubHandler("echo", false, Optional.empty(), query -> List.of(query)));
+
+        assertThrows(IllegalArgumentException.class, () -> queryProcessor.processAsync("lower", "q", executor));
+        assertEquals(0, executor.deferred.size());
+    }
+
+    @Test
+    void rejectsTwoHandlersForOneType() {
+        assertThrows(IllegalStateException.class, () -> processor(LONG_TIMEOUT,
+                new StubHandler("echo", false, Optional.empty(), query -> List.of(query)),
+                new StubHandler("echo", false, Optional.empty(), query -> List.of())));
+    }
+
+    @Test
+    void handlerRunsOnTheGivenExecutor() {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT,
+                new StubHandler("echo", false, Optional.empty(), query -> List.of(query)));
+
+        CompletableFuture<List<String>> results = queryProcessor.processAsync("echo", "q", executor);
+
+        assertFalse(results.isDone());
+        executor.runDeferred();
+        assertEquals(List.of("q"), results.join());
+    }
+
+    @Test
+    void failingHandlerFailsItsFuture() {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT, new StubHandler("echo", false, Optional.empty(),
+                query -> {
+                    throw new IllegalStateException("broken");
+                }));
+
+        CompletableFuture<List<String>> results = queryProcessor.processAsync("echo", "q", executor);
+        executor.runDeferred();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertFalse(QueryProcessor.isTimeout(e.getCause()));
+    }
+
+    /**
+     * A handler that declares its own timeout is held to it rather than to the much longer default.  The handler
+     * blocks until the test ends, so only the timeout can complete its future.
+     */
+    @Test
+    void handlerThatExceedsItsOwnTimeoutFailsWithATimeout() {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT,
+                new StubHandler("echo", false, Optional.of(Duration.ofMillis(10)), query -> block()));
+
+        CompletableFuture<List<String>> results = queryProcessor.processAsync("echo", "q", command ->
+                new Thread(command).start());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertTrue(QueryProcessor.isTimeout(e.getCause()));
+    }
+
+    @Test
+    void handlerWithoutItsOwnTimeoutIsHeldToTheDefault() {
+        QueryProcessor queryProcessor = processor(Duration.ofMillis(10),
+                new StubHandler("echo", false, Optional.empty(), query -> block()));
+
+        CompletableFuture<List<String>> results = queryProcessor.processAsync("echo", "q", command ->
+                new Thread(command).start());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(5, TimeUnit.SECONDS));
+        assertTrue(QueryProcessor.isTimeout(e.getCause()));
+    }
+
+    @Test
+    void memoizesTheResultsOfCacheableHandlersPerQueryText() {
+        AtomicInteger calls = new AtomicInteger();
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT, new StubHandler("echo", true, Optional.empty(),
+                query -> List.of(query + calls.incrementAndGet())));
+
+        CompletableFuture<List<String>> first = queryProcessor.processAsync("echo", "a", executor);
+        executor.runDeferred();
+        CompletableFuture<List<String>> second = queryProcessor.processAsync("echo", "a", executor);
+        CompletableFuture<List<String>> other = queryProcessor.processAsync("echo", "b", executor);
+        executor.runDeferred();
+
+        assertEquals(List.of("a1"), first.join());
+        assertEquals(List.of("a1"), second.join());
+        assertEquals(List.of("b2"), other.join());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void doesNotMemoizeHandlersThatAreNotCacheable() {
+        AtomicInteger calls = new AtomicInteger();
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT, new StubHandler("echo", false, Optional.empty(),
+                query -> List.of(query + calls.incrementAndGet())));
+
+        CompletableFuture<List<String>> first = queryProcessor.processAsync("echo", "a", executor);
+        CompletableFuture<List<String>> second = queryProcessor.processAsync("echo", "a", executor);
+        executor.runDeferred();
+
+        assertEquals(List.of("a1"), first.join());
+        assertEquals(List.of("a2"), second.join());
+    }
+
+    @Test
+    void batchResultsFollowTheOrderOfTheBatchWhateverOrderTheyFinishIn() throws Exception {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT,
+                new StubHandler("echo", false, Optional.empty(), query -> List.of(query)));
+
+        CompletableFuture<List<List<String>>> results =
+                queryProcessor.processBatchAsync("echo", List.of("a", "b", "c"), executor);
+        assertEquals(3, executor.deferred.size());
+        executor.runDeferredInReverse();
+
+        assertEquals(List.of(List.of("a"), List.of("b"), List.of("c")), results.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void batchFailsIfAnySubQueryFails() {
+        QueryProcessor queryProcessor = processor(LONG_TIMEOUT, new StubHandler("echo", false, Optional.empty(),
+                query -> {
+                    if (query.equals("bad")) {
+                        throw new IllegalStateException("broken");
+                    }
+                    return List.of(query);
+                }));
+
+        CompletableFuture<List<List<String>>> results =
+                queryProcessor.processBatchAsync("echo", List.of("a", "bad"), executor);
+        executor.runDeferred();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    private List<String> block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return List.of();
+    }
+
+    private record StubHandler(String type, boolean isCacheable, Optional<Duration> timeout,
+                               Function<String, List<String>> results) implements QueryHandler {
+
+        @Override
+        public List<String> handle(String query) {
+            return results.apply(query);
+        }
+    }
+
+    /**
+     * Holds submitted tasks until the test runs them, so that the test controls when and in what order handlers run.
+     */
+    private static final class DeferringExecutor implements Executor {
+
+        private final List<Runnable> deferred = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            deferred.add(command);
+        }
+
+        void runDeferred() {
+            List<Runnable> tasks = new ArrayList<>(deferred);
+            deferred.clear();
+            tasks.forEach(Runnable::run);
+        }
+
+        void runDeferredInReverse() {
+            List<Runnable> tasks = new ArrayList<>(deferred);
+            deferred.clear();
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                tasks.get(i).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.storck.kafkamessagingexample.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SystemInfoQueryHandlerTest {
+
+    private final SystemInfoQueryHandler queryHandler = new SystemInfoQueryHandler();
+
+    @Test
+    void answersTheSystemInfoType() {
+        assertEquals("system-info", queryHandler.type());
+        assertEquals(SystemInfoQueryHandler.TYPE, queryHandler.type());
+    }
+
+    @Test
+    void resultsFrameTheQueryAndSystemDetailsBetweenSeparators() {
+        List<String> results = queryHandler.handle("select all");
+
+        assertEquals(8, results.size());
+        assertEquals(results.get(0), results.get(7));
+        assertEquals("query: select all", results.get(1));
+        assertEquals("OS Name: " + System.getProperty("os.name"), results.get(2));
+        assertEquals("OS Version: " + System.getProperty("os.version"), results.get(3));
+        assertEquals("OS Architecture: " + System.getProperty("os.arch"), results.get(4));
+        assertEquals("User Name: " + System.getProperty("user.name"), results.get(5));
+        assertEquals("User Home: " + System.getProperty("user.home"), results.get(6));
+    }
+
+    @Test
+    void eachQueryGetsItsOwnQueryLine() {
+        List<String> first = queryHandler.handle("first");
+        List<String> second = queryHandler.handle("second");
+
+        assertEquals("query: first", first.get(1));
+        assertEquals("query: second", second.get(1));
+        assertEquals(first.subList(2, 8), second.subList(2, 8));
+    }
+
+    @Test
+    void resultsCannotBeModified() {
+        List<String> results = queryHandler.handle("select all");
+
+        assertThrows(UnsupportedOperationException.class, () -> results.set(1, "changed"));
+    }
+
+    @Test
+    void isNotCacheableAndUsesTheDefaultTimeout() {
+        assertFalse(queryHandler.isCacheable());
+        assertEquals(Optional.empty(), queryHandler.timeout());
+    }
+}
@@ -0,0 +1,121 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.storck.kafkamessagingexample.model.NodeHeartbeat;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.MEMBERSHIP_TOPIC_NAME;
+
+class CompletionPolicyTest {
+
+    private final ManualClock clock = new ManualClock(0);
+
+    @SuppressWarnings("unchecked")
+    private final ResponderMembership membership = new ResponderMembership(mock(KafkaTemplate.class),
+            new ResponseRouter(-1, new QueryMetrics(new SimpleMeterRegistry())), "self", 6000, clock);
+
+    private void heartbeat(String memberId) {
+        membership.listenForHeartbeats(new ConsumerRecord<>(MEMBERSHIP_TOPIC_NAME, 0, 0, memberId,
+                NodeHeartbeat.builder().nodeId(memberId).build()));
+    }
+
+    @Test
+    void timeoutIsNeverSatisfied() {
+        assertFalse(CompletionPolicy.timeout().isSatisfied(Set.of()));
+        assertFalse(CompletionPolicy.timeout().isSatisfied(Set.of("a", "b", "c")));
+    }
+
+    @Test
+    void firstCompletesOnAnyResponse() {
+        assertFalse(CompletionPolicy.first().isSatisfied(Set.of()));
+        assertTrue(CompletionPolicy.first().isSatisfied(Set.of("a")));
+    }
+
+    @Test
+    void responsesCompletesOnceTheCountIsReached() {
+        CompletionPolicy policy = CompletionPolicy.responses(2);
+        assertFalse(policy.isSatisfied(Set.of("a")));
+        assertTrue(policy.isSatisfied(Set.of("a", "b")));
+        assertTrue(policy.isSatisfied(Set.of("a", "b", "c")));
+    }
+
+    @Test
+    void respondersCompletesOnceEveryNamedResponderReplied() {
+        CompletionPolicy policy = CompletionPolicy.responders(Set.of("a", "b"));
+        assertFalse(policy.isSatisfied(Set.of("a", "c")));
+        assertTrue(policy.isSatisfied(Set.of("a", "b", "c")));
+    }
+
+    @Test
+    void quorumRejectsFractionsOutsideZeroToOne() {
+        assertThrows(IllegalArgumentException.class, () -> CompletionPolicy.quorum(0, 3));
+        assertThrows(IllegalArgumentException.class, () -> CompletionPolicy.quorum(1.5, 3));
+    }
+
+    @Test
+    void quorumRoundsUp() {
+        CompletionPolicy policy = CompletionPolicy.quorum(0.5, 3);
+        assertFalse(policy.isSatisfied(Set.of("a")));
+        assertTrue(policy.isSatisfied(Set.of("a", "b")));
+    }
+
+    @Test
+    void quorumOfNoExpectedRespondersWaitsForTheTimeout() {
+        CompletionPolicy policy = CompletionPolicy.quorum(0.5, 0);
+        assertFalse(policy.isSatisfied(Set.of()));
+        assertFalse(policy.isSatisfied(Set.of("a")));
+    }
+
+    @Test
+    void allLiveWithNoLiveRespondersWaitsForTheTimeout() {
+        CompletionPolicy policy = CompletionPolicy.allLive(membership);
+        assertFalse(policy.isSatisfied(Set.of()));
+        assertFalse(policy.isSatisfied(Set.of("unknown")));
+    }
+
+    @Test
+    void allLiveCompletesOnceEveryLiveResponderReplied() {
+        heartbeat("a");
+        heartbeat("b");
+        CompletionPolicy policy = CompletionPolicy.allLive(membership);
+        assertFalse(policy.isSatisfied(Set.of("a")));
+        assertTrue(policy.isSatisfied(Set.of("a", "b")));
+    }
+
+    @Test
+    void allLiveStopsWaitingForRespondersWhoseHeartbeatsStop() {
+        heartbeat("a");
+        clock.advance(3000);
+        heartbeat("b");
+        CompletionPolicy policy = CompletionPolicy.allLive(membership);
+        assertFalse(policy.isSatisfied(Set.of("b")));
+
+        clock.advance(3001);
+
+        assertTrue(policy.isSatisfied(Set.of("b")));
+    }
+
+    @Test
+    void anyOfCompletesWhenAnyPolicyIsSatisfied() {
+        CompletionPolicy policy = CompletionPolicy.anyOf(List.of(CompletionPolicy.responders(Set.of("a")),
+                CompletionPolicy.responses(2)));
+        assertFalse(policy.isSatisfied(Set.of("b")));
+        assertTrue(policy.isSatisfied(Set.of("a")));
+        assertTrue(policy.isSatisfied(Set.of("b", "c")));
+    }
+
+    @Test
+    void anyOfNoPoliciesWaitsForTheTimeout() {
+        assertEquals(CompletionPolicy.timeout(), CompletionPolicy.anyOf(List.of()));
+    }
+}
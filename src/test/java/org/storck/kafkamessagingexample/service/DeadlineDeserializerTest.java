@@ -0,0 +1,70 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DeadlineDeserializerTest {
+
+    private static final String TOPIC = "queries";
+
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger decoded = new AtomicInteger();
+
+    private final Deserializer<String> countingDelegate = (topic, data) -> {
+        decoded.incrementAndGet();
+        return new String(data, StandardCharsets.UTF_8);
+    };
+
+    private final DeadlineDeserializer<String> deserializer =
+            new DeadlineDeserializer<>(countingDelegate, new QueryMetrics(meterRegistry));
+
+    private final Headers headers = new RecordHeaders();
+
+    private double expired() {
+        return meterRegistry.get("query.expired").tag("topic", TOPIC).counter().count();
+    }
+
+    @Test
+    void expiredRecordIsDroppedWithoutDecoding() {
+        QueryDeadlines.set(headers, System.currentTimeMillis() - 1000);
+
+        assertNull(deserializer.deserialize(TOPIC, headers, VALUE));
+        assertEquals(0, decoded.get());
+        assertEquals(1, expired());
+    }
+
+    @Test
+    void recordBeforeItsDeadlineIsDecoded() {
+        QueryDeadlines.set(headers, System.currentTimeMillis() + 60_000);
+
+        assertEquals("value", deserializer.deserialize(TOPIC, headers, VALUE));
+        assertEquals(1, decoded.get());
+    }
+
+    @Test
+    void recordWithoutADeadlineIsDecoded() {
+        assertEquals("value", deserializer.deserialize(TOPIC, headers, VALUE));
+        assertEquals("value", deserializer.deserialize(TOPIC, VALUE));
+        assertEquals(2, decoded.get());
+    }
+
+    @Test
+    void recordWithAShortDeadlineHeaderIsDecoded() {
+        headers.add(QueryHeaders.DEADLINE, new byte[] {0});
+
+        assertEquals("value", deserializer.deserialize(TOPIC, headers, VALUE));
+        assertEquals(1, decoded.get());
+    }
+}
@@ -0,0 +1,186 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryAdmissionTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final CompletionPolicy EARLY = CompletionPolicy.first();
+
+    private static final CompletionPolicy TIMEOUT = CompletionPolicy.timeout();
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final ExecutorService handoffExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "handoff"));
+
+    @AfterEach
+    void shutDownExecutor() {
+        handoffExecutor.shutdownNow();
+    }
+
+    private QueryAdmission admission(int maxLimit, int maxQueued, Duration queueTimeout, boolean adaptive) {
+        return new QueryAdmission(true, 1, maxLimit, maxQueued, queueTimeout, adaptive, handoffExecutor,
+                new SimpleMeterRegistry(), nanoTime::get);
+    }
+
+    /**
+     * Admission as it is configured by default.
+     */
+    private QueryAdmission defaultAdmission() {
+        return new QueryAdmission(false, 4, 64, 256, Duration.ofSeconds(1), true, handoffExecutor,
+                new SimpleMeterRegistry(), nanoTime::get);
+    }
+
+    private static QueryRejectedException.Reason rejection(CompletableFuture<?> results) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(5, TimeUnit.SECONDS));
+        Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+        return assertInstanceOf(QueryRejectedException.class, cause).getReason();
+    }
+
+    /**
+     * Runs one query through admission that takes the given time by the fake clock.
+     */
+    private void runQuery(QueryAdmission queryAdmission, CompletionPolicy completionPolicy, long latencyNanos) {
+        CompletableFuture<Void> query = new CompletableFuture<>();
+        queryAdmission.admit(completionPolicy, () -> query);
+        nanoTime.addAndGet(latencyNanos);
+        query.complete(null);
+    }
+
+    @Test
+    void queryBeyondTheQueueIsRejectedAsQueueFull() throws Exception {
+        QueryAdmission queryAdmission = admission(1, 1, Duration.ofMinutes(1), false);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        queryAdmission.admit(EARLY, () -> running);
+        CompletableFuture<String> queued =
+                queryAdmission.admit(EARLY, () -> CompletableFuture.completedFuture("queued"));
+
+        assertEquals(QueryRejectedException.Reason.QUEUE_FULL,
+                rejection(queryAdmission.admit(EARLY, () -> CompletableFuture.completedFuture("rejected"))));
+
+        running.complete("running");
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void queryThatWaitsOutTheQueueTimeoutIsRejected() {
+        QueryAdmission queryAdmission = admission(1, 1, Duration.ofMillis(50), false);
+        queryAdmission.admit(EARLY, CompletableFuture::new);
+        CompletableFuture<String> queued =
+                queryAdmission.admit(EARLY, () -> CompletableFuture.completedFuture("queued"));
+
+        assertEquals(QueryRejectedException.Reason.QUEUE_TIMEOUT, rejection(queued));
+        assertEquals(0, queryAdmission.queued());
+        assertEquals(1, queryAdmission.inFlight());
+    }
+
+    @Test
+    void waitingQueryStartsOnTheHandoffExecutor() throws Exception {
+        QueryAdmission queryAdmission = admission(1, 1, Duration.ofMinutes(1), false);
+        AtomicReference<String> firstThread = new AtomicReference<>();
+        CompletableFuture<String> running = new CompletableFuture<>();
+        queryAdmission.admit(EARLY, () -> {
+            firstThread.set(Thread.currentThread().getName());
+            return running;
+        });
+        CompletableFuture<String> queued = queryAdmission.admit(EARLY,
+                () -> CompletableFuture.completedFuture(Thread.currentThread().getName()));
+
+        running.complete("running");
+        assertEquals("handoff", queued.get(5, TimeUnit.SECONDS));
+        assertEquals(Thread.currentThread().getName(), firstThread.get());
+        assertEquals(0, queryAdmission.queued());
+    }
+
+    @Test
+    void limitShrinksAsLatencyRisesAndRecoversWhenItFalls() {
+        QueryAdmission queryAdmission = admission(100, 10, Duration.ofMinutes(1), true);
+        for (int i = 0; i < 5; i++) {
+            runQuery(queryAdmission, EARLY, MILLI);
+        }
+        assertEquals(100, queryAdmission.limit());
+
+        for (int i = 0; i < 30; i++) {
+            runQuery(queryAdmission, EARLY, 10 * MILLI);
+        }
+        double shrunk = queryAdmission.limit();
+        assertTrue(shrunk < 50 && shrunk >= 1, "Limit after rising latency: " + shrunk);
+
+        for (int i = 0; i < 30; i++) {
+            runQuery(queryAdmission, EARLY, MILLI);
+        }
+        assertTrue(queryAdmission.limit() > shrunk, "Limit after falling latency: " + queryAdmission.limit());
+        assertEquals(0, queryAdmission.inFlight());
+    }
+
+    /**
+     * Holds many more queries open than the maximum concurrency, as a burst of queries that each wait out the full
+     * timeout would, and checks that admission as configured by default starts every one of them.
+     */
+    @Test
+    void defaultAdmissionStartsEveryQueryThatWaitsForTheTimeout() {
+        QueryAdmission queryAdmission = defaultAdmission();
+        List<CompletableFuture<String>> running = new ArrayList<>();
+        AtomicInteger started = new AtomicInteger();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            CompletableFuture<String> query = new CompletableFuture<>();
+            running.add(query);
+            results.add(queryAdmission.admit(TIMEOUT, () -> {
+                started.incrementAndGet();
+                return query;
+            }));
+        }
+
+        assertEquals(1000, started.get());
+        running.forEach(query -> query.complete("done"));
+        results.forEach(result -> assertEquals("done", result.join()));
+    }
+
+    @Test
+    void queriesThatWaitForTheTimeoutAreAdmittedUpToTheMaximumAndDoNotAdaptTheLimit() {
+        QueryAdmission queryAdmission = admission(10, 10, Duration.ofMinutes(1), true);
+        runQuery(queryAdmission, EARLY, MILLI);
+        for (int i = 0; i < 30; i++) {
+            runQuery(queryAdmission, EARLY, 10 * MILLI);
+        }
+        double shrunk = queryAdmission.limit();
+        assertTrue(shrunk < 10, "Limit after rising latency: " + shrunk);
+
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            CompletableFuture<Void> query = new CompletableFuture<>();
+            running.add(query);
+            queryAdmission.admit(TIMEOUT, () -> query);
+        }
+        assertEquals(10, queryAdmission.inFlight());
+        assertEquals(0, queryAdmission.queued());
+
+        nanoTime.addAndGet(5_000 * MILLI);
+        running.forEach(query -> query.complete(null));
+        assertEquals(shrunk, queryAdmission.limit());
+        assertEquals(0, queryAdmission.inFlight());
+    }
+}
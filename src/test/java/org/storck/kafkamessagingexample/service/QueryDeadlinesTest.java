@@ -0,0 +1,77 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryDeadlinesTest {
+
+    private final Headers headers = new RecordHeaders();
+
+    @Test
+    void deadlineHasPassedOnlyAfterItsTime() {
+        QueryDeadlines.set(headers, 1000);
+
+        assertTrue(QueryDeadlines.isSet(headers));
+        assertFalse(QueryDeadlines.hasPassed(headers, 999));
+        assertFalse(QueryDeadlines.hasPassed(headers, 1000));
+        assertTrue(QueryDeadlines.hasPassed(headers, 1001));
+    }
+
+    @Test
+    void recordWithoutADeadlineNeverExpires() {
+        assertFalse(QueryDeadlines.isSet(headers));
+        assertFalse(QueryDeadlines.hasPassed(headers, Long.MAX_VALUE));
+    }
+
+    @Test
+    void deadlineOfTheWrongLengthIsIgnored() {
+        headers.add(QueryHeaders.DEADLINE, new byte[] {1, 2, 3});
+
+        assertFalse(QueryDeadlines.isSet(headers));
+        assertFalse(QueryDeadlines.hasPassed(headers, Long.MAX_VALUE));
+    }
+
+    @Test
+    void deadlineWithANullValueIsIgnored() {
+        headers.add(QueryHeaders.DEADLINE, null);
+
+        assertFalse(QueryDeadlines.isSet(headers));
+        assertFalse(QueryDeadlines.hasPassed(headers, Long.MAX_VALUE));
+    }
+
+    @Test
+    void lastDeadlineWins() {
+        QueryDeadlines.set(headers, 1000);
+        QueryDeadlines.set(headers, 2000);
+
+        assertFalse(QueryDeadlines.hasPassed(headers, 1500));
+    }
+
+    @Test
+    void copyCarriesTheDeadlineToTheResponse() {
+        Headers responseHeaders = new RecordHeaders();
+        QueryDeadlines.set(headers, 1000);
+
+        QueryDeadlines.copy(headers, responseHeaders);
+
+        assertArrayEquals(headers.lastHeader(QueryHeaders.DEADLINE).value(),
+                responseHeaders.lastHeader(QueryHeaders.DEADLINE).value());
+        assertTrue(QueryDeadlines.hasPassed(responseHeaders, 1001));
+    }
+
+    @Test
+    void copyOfAQueryWithoutAValidDeadlineAddsNothing() {
+        Headers responseHeaders = new RecordHeaders();
+        headers.add(QueryHeaders.DEADLINE, new byte[] {1});
+
+        QueryDeadlines.copy(headers, responseHeaders);
+
+        assertNull(responseHeaders.lastHeader(QueryHeaders.DEADLINE));
+    }
+}
@@ -0,0 +1,87 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryResultCacheTest {
+
+    private final QueryResultCache queryResultCache =
+            new QueryResultCache(new ConcurrentMapCacheManager(QueryResultCache.CACHE_NAME));
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private CompletableFuture<List<String>> getOrLoad(String query, boolean useCache,
+                                                      CompletableFuture<QueryResults> loaded) {
+        return queryResultCache.getOrLoad(null, query, CompletionPolicy.timeout(), ResultReducer.concat(), useCache,
+                () -> {
+                    loads.incrementAndGet();
+                    return loaded;
+                });
+    }
+
+    @Test
+    void normalizeTrimsAndCollapsesWhitespace() {
+        assertEquals("select all nodes", QueryResultCache.normalize("  select \t all\n\nnodes "));
+    }
+
+    @Test
+    void queriesThatDifferOnlyInWhitespaceShareCachedResults() throws Exception {
+        getOrLoad("select  all", true, CompletableFuture.completedFuture(new QueryResults(List.of("a"), true)))
+                .get(5, TimeUnit.SECONDS);
+
+        List<String> results = getOrLoad(" select all ", true, new CompletableFuture<>()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("a"), results);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void concurrentIdenticalQueriesShareOneLoad() throws Exception {
+        CompletableFuture<QueryResults> loaded = new CompletableFuture<>();
+        CompletableFuture<List<String>> first = getOrLoad("select all", true, loaded);
+        CompletableFuture<List<String>> second = getOrLoad("select  all", false, new CompletableFuture<>());
+
+        assertSame(first, second);
+        assertFalse(first.isDone());
+        loaded.complete(new QueryResults(List.of("a", "b"), true));
+
+        assertEquals(List.of("a", "b"), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsNotCachedOrShared() throws Exception {
+        getOrLoad("select all", true, CompletableFuture.failedFuture(new IllegalStateException("failed")))
+                .exceptionally(ex -> null)
+                .get(5, TimeUnit.SECONDS);
+
+        getOrLoad("select all", true, CompletableFuture.completedFuture(new QueryResults(List.of("a"), true)))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void incompleteResultsAreReturnedButNotCached() throws Exception {
+        List<String> results = getOrLoad("select all", true,
+                CompletableFuture.completedFuture(new QueryResults(List.of("partial"), false)))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("partial"), results);
+
+        results = getOrLoad("select all", true,
+                CompletableFuture.completedFuture(new QueryResults(List.of("partial", "rest"), true)))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("partial", "rest"), results);
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,494 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.storck.kafkamessagingexample.handler.QueryHandler;
+import org.storck.kafkamessagingexample.handler.QueryProcessor;
+import org.storck.kafkamessagingexample.model.SimpleQuery;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.QUERY_TOPIC_NAME;
+
+class QueryServiceTest {
+
+    private static final int MAX_IN_FLIGHT = 4;
+
+    private static final Duration MAX_QUERY_AGE = Duration.ofSeconds(5);
+
+    /**
+     * Answers each query with its own text, and fails queries whose text is "fail".
+     */
+    private static final QueryHandler ECHO = new QueryHandler() {
+
+        @Override
+        public String type() {
+            return "echo";
+        }
+
+        @Override
+        public List<String> handle(String query) {
+            if (query.equals("fail")) {
+                throw new IllegalStateException("broken");
+            }
+            return List.of(query);
+        }
+    };
+
+    private final ManualClock clock = new ManualClock(1_000_000);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final QueryMetrics queryMetrics = new QueryMetrics(meterRegistry);
+
+    private final ResponseRouter responseRouter = new ResponseRouter(-1, queryMetrics);
+
+    private final DeferringExecutor responderExecutor = new DeferringExecutor();
+
+    private final List<ProducerRecord<String, SimpleQuery>> sentQueries = new CopyOnWriteArrayList<>();
+
+    private final List<ProducerRecord<String, SimpleResponse>> sentResponses = new CopyOnWriteArrayList<>();
+
+    private CompletableFuture<Void> responseSendOutcome = CompletableFuture.completedFuture(null);
+
+    private int queryOffset;
+
+    @SuppressWarnings("unchecked")
+    private QueryService queryService(int maxInFlight) {
+        KafkaTemplate<String, SimpleQuery> queryTemplate = mock(KafkaTemplate.class);
+        when(queryTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            sentQueries.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+        KafkaTemplate<String, SimpleResponse> responseTemplate = mock(KafkaTemplate.class);
+        when(responseTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            sentResponses.add(invocation.getArgument(0));
+            return responseSendOutcome.thenApply(ignored -> null);
+        });
+        QueryProcessor queryProcessor = new QueryProcessor(List.of(ECHO), "echo", Duration.ofMinutes(1), 100,
+                Duration.ofMinutes(1));
+        return new QueryService(queryTemplate, responseTemplate, responseRouter, queryProcessor, Runnable::run,
+                "node-1", responderExecutor, maxInFlight, MAX_QUERY_AGE, queryMetrics,
+                new QueryTracer(false, List.of()), clock);
+    }
+
+    private ConsumerRecord<String, SimpleQuery> queryRecord(SimpleQuery simpleQuery, long timestamp,
+                                                            Long deadline) {
+        ConsumerRecord<String, SimpleQuery> queryRecord = new ConsumerRecord<>(QUERY_TOPIC_NAME, 0, queryOffset++,
+                timestamp, TimestampType.CREATE_TIME, 0, 0, simpleQuery.getId(), simpleQuery, new RecordHeaders(),
+                Optional.empty());
+        queryRecord.headers().add(QueryHeaders.ORIGIN_NODE, bytes("node-2"));
+        if (deadline != null) {
+            QueryDeadlines.set(queryRecord.headers(), deadline);
+        }
+        return queryRecord;
+    }
+
+    private ConsumerRecord<String, SimpleQuery> query(String text) {
+        return queryRecord(SimpleQuery.builder().id(text).type("echo").query(text).build(), clock.millis(),
+                clock.millis() + 1000);
+    }
+
+    private static byte[] bytes(String nodeId) {
+        return nodeId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static RecordHeaders origin(String nodeId) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(QueryHeaders.ORIGIN_NODE, bytes(nodeId));
+        return headers;
+    }
+
+    private double count(String name) {
+        Counter counter = meterRegistry.find(name).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void queryHoldsOnePermitUntilItsResponseIsSent() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        queryService.listenForQueries(List.of(query("a")));
+        assertEquals(MAX_IN_FLIGHT - 1, queryService.availableResponderPermits());
+        assertTrue(sentResponses.isEmpty());
+
+        responderExecutor.runDeferred();
+
+        assertEquals(1, sentResponses.size());
+        assertEquals(List.of("a"), sentResponses.get(0).value().getResults());
+        assertEquals("node-1", sentResponses.get(0).value().getResponderId());
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void permitIsHeldUntilTheResponseSendCompletes() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        CompletableFuture<Void> sendOutcome = new CompletableFuture<>();
+        responseSendOutcome = sendOutcome;
+
+        queryService.listenForQueries(List.of(query("a")));
+        responderExecutor.runDeferred();
+        assertEquals(1, sentResponses.size());
+        assertEquals(MAX_IN_FLIGHT - 1, queryService.availableResponderPermits());
+
+        sendOutcome.complete(null);
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    /**
+     * With every permit held by a query whose handler has not run, the listener blocks on the next query rather than
+     * returning to poll for more, and resumes once the first response frees a permit.
+     */
+    @Test
+    void listenerBlocksWhilePermitsRunOut() throws Exception {
+        QueryService queryService = queryService(1);
+        queryService.listenForQueries(List.of(query("a")));
+        assertEquals(0, queryService.availableResponderPermits());
+
+        Thread listener = new Thread(() -> {
+            try {
+                queryService.listenForQueries(List.of(query("b")));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        listener.start();
+        awaitParked(listener);
+        assertEquals(1, responderExecutor.deferred.size());
+
+        responderExecutor.runDeferred();
+        listener.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(Thread.State.TERMINATED, listener.getState());
+        responderExecutor.runDeferred();
+
+        assertEquals(List.of("a", "b"), sentResponses.stream().map(ProducerRecord::key).toList());
+        assertEquals(1, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void failedHandlerSendsNoResponseAndReleasesItsPermit() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        queryService.listenForQueries(List.of(query("fail")));
+        responderExecutor.runDeferred();
+
+        assertTrue(sentResponses.isEmpty());
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void failedSendReleasesItsPermit() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        responseSendOutcome = CompletableFuture.failedFuture(new IllegalStateException("broker unavailable"));
+
+        queryService.listenForQueries(List.of(query("a")));
+        responderExecutor.runDeferred();
+
+        assertEquals(1, sentResponses.size());
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void queryWhoseDeadlineHasPassedIsDroppedWithoutRunningItsHandler() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        SimpleQuery simpleQuery = SimpleQuery.builder().id("late").type("echo").query("late").build();
+
+        queryService.listenForQueries(List.of(queryRecord(simpleQuery, clock.millis() - 10, clock.millis() - 1)));
+
+        assertTrue(responderExecutor.deferred.isEmpty());
+        assertTrue(sentResponses.isEmpty());
+        assertEquals(1, count("query.expired"));
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void queryWithoutADeadlineIsShedOnceOlderThanTheMaximumAge() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        SimpleQuery simpleQuery = SimpleQuery.builder().id("old").type("echo").query("old").build();
+
+        queryService.listenForQueries(List.of(
+                queryRecord(simpleQuery, clock.millis() - MAX_QUERY_AGE.toMillis() - 1, null)));
+
+        assertTrue(responderExecutor.deferred.isEmpty());
+        assertEquals(1, count("query.responder.shed"));
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void queryWithAFutureDeadlineIsAnsweredHoweverOld() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        SimpleQuery simpleQuery = SimpleQuery.builder().id("old").type("echo").query("old").build();
+
+        queryService.listenForQueries(List.of(queryRecord(simpleQuery,
+                clock.millis() - 2 * MAX_QUERY_AGE.toMillis(), clock.millis() + 1000)));
+        responderExecutor.runDeferred();
+
+        assertEquals(1, sentResponses.size());
+        assertEquals(0, count("query.responder.shed"));
+    }
+
+    @Test
+    void responseIsDroppedWhenTheDeadlinePassesDuringProcessing() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        queryService.listenForQueries(List.of(query("a")));
+        clock.advance(2000);
+        responderExecutor.runDeferred();
+
+        assertTrue(sentResponses.isEmpty());
+        assertEquals(1, count("query.expired"));
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    private ConsumerRecord<String, SimpleQuery> batchQuery(String id, String... queries) {
+        return queryRecord(SimpleQuery.builder().id(id).type("echo").batch(List.of(queries)).build(), clock.millis(),
+                clock.millis() + 1000);
+    }
+
+    @Test
+    void batchHoldsOnePermitPerSubQueryAndIsAnsweredWithOneResponse() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        queryService.listenForQueries(List.of(batchQuery("batch", "a", "b", "c")));
+        assertEquals(MAX_IN_FLIGHT - 3, queryService.availableResponderPermits());
+        assertEquals(3, responderExecutor.deferred.size());
+
+        responderExecutor.runDeferred();
+
+        assertEquals(1, sentResponses.size());
+        assertEquals(List.of(List.of("a"), List.of("b"), List.of("c")),
+                sentResponses.get(0).value().getBatchResults());
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void batchLargerThanTheBudgetHoldsEveryPermit() throws Exception {
+        QueryService queryService = queryService(2);
+
+        queryService.listenForQueries(List.of(batchQuery("batch", "a", "b", "c", "d", "e")));
+        assertEquals(0, queryService.availableResponderPermits());
+
+        responderExecutor.runDeferred();
+
+        assertEquals(1, sentResponses.size());
+        assertEquals(2, queryService.availableResponderPermits());
+    }
+
+    @Test
+    void batchWithAFailedSubQuerySendsNoResponseAndReleasesItsPermits() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        queryService.listenForQueries(List.of(batchQuery("batch", "a", "fail")));
+        responderExecutor.runDeferred();
+
+        assertTrue(sentResponses.isEmpty());
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    /**
+     * Each responder's batch response is split back into its sub-queries and reduced with the local results of each,
+     * while a response from a node that predates batches counts toward the policy but contributes no results.
+     */
+    @Test
+    void batchResponsesAreSplitBackIntoPerQueryResults() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        CompletableFuture<List<List<String>>> results = queryService.processLocalBatchAsync("echo",
+                List.of("a", "b"), Duration.ofMinutes(1), CompletionPolicy.responses(3), ResultReducer.concat());
+        SimpleQuery broadcast = sentQueries.get(0).value();
+        assertEquals(List.of("a (broadcast)", "b (broadcast)"), broadcast.getBatch());
+        responseRouter.routeResponse(SimpleResponse.builder()
+                .id(broadcast.getId())
+                .responderId("node-2")
+                .batchResults(List.of(List.of("a2"), List.of("b2", "b2'")))
+                .build());
+        responseRouter.routeResponse(SimpleResponse.builder()
+                .id(broadcast.getId())
+                .responderId("node-3")
+                .results(List.of("legacy"))
+                .build());
+        responseRouter.routeResponse(SimpleResponse.builder()
+                .id(broadcast.getId())
+                .responderId("node-4")
+                .batchResults(List.of(List.of("a4"), List.of("b4")))
+                .build());
+
+        assertEquals(List.of(List.of("a", "a2", "a4"), List.of("b", "b2", "b2'", "b4")),
+                results.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void queryWithoutAnOriginIsNotOwn() {
+        assertFalse(QueryService.isOwnQuery(new RecordHeaders(), bytes("node-1")));
+    }
+
+    @Test
+    void queryFromThisNodeIsOwn() {
+        assertTrue(QueryService.isOwnQuery(origin("node-1"), bytes("node-1")));
+    }
+
+    @Test
+    void queryFromAnotherNodeIsNotOwn() {
+        assertFalse(QueryService.isOwnQuery(origin("node-2"), bytes("node-1")));
+    }
+
+    @Test
+    void originThatIsAPrefixOfThisNodeIdOrExtendsItIsNotOwn() {
+        assertFalse(QueryService.isOwnQuery(origin("node-1"), bytes("node-10")));
+        assertFalse(QueryService.isOwnQuery(origin("node-10"), bytes("node-1")));
+    }
+
+    @Test
+    void ownQueriesAreCountedAsSelfSuppressedAndNotAnswered() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        ConsumerRecord<String, SimpleQuery> ownQuery = query("own");
+        ownQuery.headers().remove(QueryHeaders.ORIGIN_NODE);
+        ownQuery.headers().add(QueryHeaders.ORIGIN_NODE, bytes("node-1"));
+
+        queryService.listenForQueries(List.of(ownQuery, query("other")));
+        responderExecutor.runDeferred();
+
+        assertEquals(1, count("query.self.suppressed"));
+        assertEquals(List.of("other"), sentResponses.stream().map(ProducerRecord::key).toList());
+        assertEquals(MAX_IN_FLIGHT, queryService.availableResponderPermits());
+    }
+
+    private void respond(String queryId, String responderId, String... results) {
+        responseRouter.routeResponse(SimpleResponse.builder()
+                .id(queryId)
+                .responderId(responderId)
+                .results(List.of(results))
+                .build());
+    }
+
+    @Test
+    void streamDeliversTheLocalResultsAndThenEachResponseAsItArrives() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        List<SimpleResponse> streamed = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> done = queryService.streamLocalQuery("echo", "a", Duration.ofMinutes(1),
+                CompletionPolicy.responses(2), streamed::add);
+        String queryId = sentQueries.get(0).value().getId();
+        assertEquals(List.of("node-1"), streamed.stream().map(SimpleResponse::getResponderId).toList());
+        assertEquals(List.of("a"), streamed.get(0).getResults());
+
+        respond(queryId, "node-2", "a2");
+        assertEquals(2, streamed.size());
+        assertFalse(done.isDone());
+        respond(queryId, "node-3", "a3");
+
+        done.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("node-1", "node-2", "node-3"),
+                streamed.stream().map(SimpleResponse::getResponderId).toList());
+        respond(queryId, "node-4", "a4");
+        assertEquals(3, streamed.size());
+    }
+
+    @Test
+    void streamCompletesAtTheTimeoutWithTheResponsesThatArrived() throws Exception {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+        List<SimpleResponse> streamed = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> done = queryService.streamLocalQuery("echo", "a", Duration.ofMillis(10),
+                CompletionPolicy.responses(5), streamed::add);
+        respond(sentQueries.get(0).value().getId(), "node-2", "a2");
+
+        done.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("node-1", "node-2"), streamed.stream().map(SimpleResponse::getResponderId).toList());
+    }
+
+    @Test
+    void streamFailsWhenTheLocalHandlerFails() {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        CompletableFuture<Void> done = queryService.streamLocalQuery("echo", "fail", Duration.ofMillis(10),
+                CompletionPolicy.timeout(), response -> { });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void streamOfAnUnsupportedTypeFailsWithoutBroadcasting() {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        CompletableFuture<Void> done = queryService.streamLocalQuery("unknown", "a", Duration.ofMinutes(1),
+                CompletionPolicy.timeout(), response -> { });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertTrue(sentQueries.isEmpty());
+    }
+
+    @Test
+    void broadcastQueryCarriesItsOriginAndDeadline() {
+        QueryService queryService = queryService(MAX_IN_FLIGHT);
+
+        queryService.processLocalQueryAsync("echo", "a", Duration.ofSeconds(3), CompletionPolicy.first(),
+                ResultReducer.concat());
+
+        ProducerRecord<String, SimpleQuery> queryRecord = sentQueries.get(0);
+        assertEquals("node-1", new String(queryRecord.headers().lastHeader(QueryHeaders.ORIGIN_NODE).value(),
+                StandardCharsets.UTF_8));
+        assertTrue(QueryDeadlines.hasPassed(queryRecord.headers(), clock.millis() + 3001));
+        assertFalse(QueryDeadlines.hasPassed(queryRecord.headers(), clock.millis() + 3000));
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Listener did not block waiting for a permit");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Holds submitted tasks until the test runs them, so that the test decides when handlers run.
+     */
+    private static final class DeferringExecutor implements Executor {
+
+        private final Queue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void execute(Runnable command) {
+            deferred.add(command);
+        }
+
+        void runDeferred() {
+            List<Runnable> tasks = new ArrayList<>();
+            Runnable task;
+            while ((task = deferred.poll()) != null) {
+                tasks.add(task);
+            }
+            tasks.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.RESULT_TOPIC_NAME;
+
+class QueryTracerTest {
+
+    private static final byte[] RESPONDER_ID = "node-2".getBytes(StandardCharsets.UTF_8);
+
+    private final List<ResponseTrace> exported = new ArrayList<>();
+
+    private final QueryTracer queryTracer = new QueryTracer(true, List.of(exported::add));
+
+    private static long timestamp(Headers headers, String key) {
+        return ByteBuffer.wrap(headers.lastHeader(key).value()).getLong();
+    }
+
+    private static ConsumerRecord<String, SimpleResponse> responseRecord(Headers responseHeaders) {
+        ConsumerRecord<String, SimpleResponse> responseRecord =
+                new ConsumerRecord<>(RESULT_TOPIC_NAME, 0, 0, "query", SimpleResponse.builder().id("query").build());
+        responseHeaders.forEach(header -> responseRecord.headers().add(header));
+        return responseRecord;
+    }
+
+    @Test
+    void queryCarriesANewTraceIdAndItsSendTime() {
+        Headers first = new RecordHeaders();
+        Headers second = new RecordHeaders();
+        long before = System.currentTimeMillis();
+
+        queryTracer.traceQuery(first);
+        queryTracer.traceQuery(second);
+
+        assertNotNull(first.lastHeader(QueryHeaders.TRACE_ID));
+        assertNotEquals(new String(first.lastHeader(QueryHeaders.TRACE_ID).value(), StandardCharsets.UTF_8),
+                new String(second.lastHeader(QueryHeaders.TRACE_ID).value(), StandardCharsets.UTF_8));
+        long sentAt = timestamp(first, QueryHeaders.SENT_AT);
+        assertTrue(sentAt >= before && sentAt <= System.currentTimeMillis());
+    }
+
+    @Test
+    void disabledTracerAddsNoHeaders() {
+        Headers queryHeaders = new RecordHeaders();
+
+        new QueryTracer(false, List.of()).traceQuery(queryHeaders);
+
+        assertFalse(queryHeaders.iterator().hasNext());
+    }
+
+    @Test
+    void responseEchoesTheQueryTraceAndAddsTheResponderTimeline() {
+        Headers queryHeaders = new RecordHeaders();
+        queryTracer.traceQuery(queryHeaders);
+        Headers responseHeaders = new RecordHeaders();
+
+        queryTracer.traceResponse(queryHeaders, RESPONDER_ID, 1234, responseHeaders);
+
+        assertArrayEquals(queryHeaders.lastHeader(QueryHeaders.TRACE_ID).value(),
+                responseHeaders.lastHeader(QueryHeaders.TRACE_ID).value());
+        assertEquals(timestamp(queryHeaders, QueryHeaders.SENT_AT), timestamp(responseHeaders, QueryHeaders.SENT_AT));
+        assertArrayEquals(RESPONDER_ID, responseHeaders.lastHeader(QueryHeaders.RESPONDER_ID).value());
+        assertEquals(1234, timestamp(responseHeaders, QueryHeaders.RECEIVED_AT));
+        assertNotNull(responseHeaders.lastHeader(QueryHeaders.RESPONDED_AT));
+    }
+
+    @Test
+    void responseToAnUntracedQueryIsNotTraced() {
+        Headers responseHeaders = new RecordHeaders();
+
+        queryTracer.traceResponse(new RecordHeaders(), RESPONDER_ID, 1234, responseHeaders);
+
+        assertFalse(responseHeaders.iterator().hasNext());
+    }
+
+    @Test
+    void receivedResponseIsExportedWithItsTimeline() {
+        Headers queryHeaders = new RecordHeaders();
+        queryTracer.traceQuery(queryHeaders);
+        Headers responseHeaders = new RecordHeaders();
+        queryTracer.traceResponse(queryHeaders, RESPONDER_ID, timestamp(queryHeaders, QueryHeaders.SENT_AT) + 5,
+                responseHeaders);
+
+        queryTracer.responseReceived(responseRecord(responseHeaders));
+
+        assertEquals(1, exported.size());
+        ResponseTrace responseTrace = exported.get(0);
+        assertEquals(new String(queryHeaders.lastHeader(QueryHeaders.TRACE_ID).value(), StandardCharsets.UTF_8),
+                responseTrace.traceId());
+        assertEquals("query", responseTrace.queryId());
+        assertEquals("node-2", responseTrace.responderId());
+        assertEquals(timestamp(queryHeaders, QueryHeaders.SENT_AT), responseTrace.sentAt());
+        assertEquals(responseTrace.sentAt() + 5, responseTrace.receivedAt());
+        assertEquals(timestamp(responseHeaders, QueryHeaders.RESPONDED_AT), responseTrace.respondedAt());
+        assertTrue(responseTrace.arrivedAt() >= responseTrace.respondedAt());
+    }
+
+    @Test
+    void responseWithoutTheFullTimelineIsNotExported() {
+        Headers responseHeaders = new RecordHeaders();
+        queryTracer.traceQuery(responseHeaders);
+
+        queryTracer.responseReceived(responseRecord(responseHeaders));
+
+        assertTrue(exported.isEmpty());
+    }
+
+    @Test
+    void responseWithATruncatedTimestampIsNotExported() {
+        Headers queryHeaders = new RecordHeaders();
+        queryTracer.traceQuery(queryHeaders);
+        Headers responseHeaders = new RecordHeaders();
+        queryTracer.traceResponse(queryHeaders, RESPONDER_ID, 1234, responseHeaders);
+        responseHeaders.remove(QueryHeaders.RECEIVED_AT);
+        responseHeaders.add(QueryHeaders.RECEIVED_AT, new byte[] {0, 0, 0, 1});
+
+        queryTracer.responseReceived(responseRecord(responseHeaders));
+
+        assertTrue(exported.isEmpty());
+    }
+
+    @Test
+    void responseToAQueryWithATruncatedSendTimeIsNotTraced() {
+        Headers queryHeaders = new RecordHeaders();
+        queryHeaders.add(QueryHeaders.TRACE_ID, "trace".getBytes(StandardCharsets.UTF_8));
+        queryHeaders.add(QueryHeaders.SENT_AT, new byte[] {1});
+        Headers responseHeaders = new RecordHeaders();
+
+        queryTracer.traceResponse(queryHeaders, RESPONDER_ID, 1234, responseHeaders);
+
+        assertFalse(responseHeaders.iterator().hasNext());
+    }
+
+    @Test
+    void failingExporterDoesNotStopTheOthers() {
+        QueryTracer tracer = new QueryTracer(true, List.of(responseTrace -> {
+            throw new IllegalStateException("collector unavailable");
+        }, exported::add));
+        Headers queryHeaders = new RecordHeaders();
+        tracer.traceQuery(queryHeaders);
+        Headers responseHeaders = new RecordHeaders();
+        tracer.traceResponse(queryHeaders, RESPONDER_ID, 1234, responseHeaders);
+
+        tracer.responseReceived(responseRecord(responseHeaders));
+
+        assertEquals(1, exported.size());
+    }
+}
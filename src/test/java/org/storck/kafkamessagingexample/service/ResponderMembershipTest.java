@@ -0,0 +1,71 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.storck.kafkamessagingexample.model.NodeHeartbeat;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.storck.kafkamessagingexample.config.KafkaConfiguration.MEMBERSHIP_TOPIC_NAME;
+
+class ResponderMembershipTest {
+
+    private static final long MEMBER_TIMEOUT_MS = 6000;
+
+    private final ManualClock clock = new ManualClock(1_000_000);
+
+    @SuppressWarnings("unchecked")
+    private final ResponderMembership membership = new ResponderMembership(mock(KafkaTemplate.class),
+            new ResponseRouter(-1, new QueryMetrics(new SimpleMeterRegistry())), "self", MEMBER_TIMEOUT_MS, clock);
+
+    private void receive(String memberId, long senderTimestamp) {
+        NodeHeartbeat heartbeat = senderTimestamp < 0
+                ? null
+                : NodeHeartbeat.builder().nodeId(memberId).timestamp(senderTimestamp).build();
+        membership.listenForHeartbeats(new ConsumerRecord<>(MEMBERSHIP_TOPIC_NAME, 0, 0, memberId, heartbeat));
+    }
+
+    @Test
+    void peerWithLaggingClockIsLive() {
+        receive("behind", clock.millis() - 10 * MEMBER_TIMEOUT_MS);
+        assertEquals(Set.of("behind"), membership.liveResponders());
+    }
+
+    @Test
+    void peerWithLeadingClockIsEvictedWhenItsHeartbeatsStop() {
+        receive("ahead", clock.millis() + 10 * MEMBER_TIMEOUT_MS);
+        clock.advance(MEMBER_TIMEOUT_MS + 1);
+        membership.evictSilentMembers();
+        assertEquals(Set.of(), membership.liveResponders());
+    }
+
+    @Test
+    void silentPeerIsEvictedOnlyAfterTheMemberTimeout() {
+        receive("peer", clock.millis());
+        clock.advance(MEMBER_TIMEOUT_MS);
+        membership.evictSilentMembers();
+        assertEquals(Set.of("peer"), membership.liveResponders());
+        assertEquals(1, membership.expectedFanOut());
+
+        clock.advance(1);
+        membership.evictSilentMembers();
+        assertEquals(Set.of(), membership.liveResponders());
+    }
+
+    @Test
+    void tombstoneRemovesPeerImmediately() {
+        receive("peer", clock.millis());
+        receive("peer", -1);
+        assertEquals(Set.of(), membership.liveResponders());
+    }
+
+    @Test
+    void ownHeartbeatIsIgnored() {
+        receive("self", clock.millis());
+        assertEquals(0, membership.expectedFanOut());
+    }
+}
@@ -0,0 +1,165 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.junit.jupiter.api.Test;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCollectorTest {
+
+    private static final Duration LONG_TIMEOUT = Duration.ofMinutes(1);
+
+    private final List<String> received = new ArrayList<>();
+
+    private static SimpleResponse response(String responderId) {
+        return SimpleResponse.builder()
+                .id("query")
+                .responderId(responderId)
+                .results(List.of(responderId))
+                .build();
+    }
+
+    private ResponseCollector collector(CompletionPolicy completionPolicy) {
+        return new ResponseCollector(completionPolicy, response -> received.add(response.getResponderId()));
+    }
+
+    @Test
+    void completesEarlyOnceThePolicyIsSatisfied() throws Exception {
+        ResponseCollector responseCollector = collector(CompletionPolicy.responses(2));
+        CompletableFuture<ResponseCollector.Completion> completion = responseCollector.awaitCompletion(LONG_TIMEOUT);
+
+        responseCollector.accept(response("a"));
+        assertFalse(completion.isDone());
+        responseCollector.accept(response("b"));
+
+        assertEquals(new ResponseCollector.Completion(2, false), completion.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b"), received);
+    }
+
+    @Test
+    void timesOutWhenThePolicyIsNotSatisfied() throws Exception {
+        ResponseCollector responseCollector = collector(CompletionPolicy.responses(2));
+        CompletableFuture<ResponseCollector.Completion> completion =
+                responseCollector.awaitCompletion(Duration.ofMillis(10));
+
+        responseCollector.accept(response("a"));
+
+        assertEquals(new ResponseCollector.Completion(1, true), completion.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void repeatedResponsesFromOneResponderCountOnce() throws Exception {
+        ResponseCollector responseCollector = collector(CompletionPolicy.responses(2));
+        CompletableFuture<ResponseCollector.Completion> completion =
+                responseCollector.awaitCompletion(Duration.ofMillis(10));
+
+        responseCollector.accept(response("a"));
+        responseCollector.accept(response("a"));
+
+        assertEquals(new ResponseCollector.Completion(1, true), completion.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "a"), received);
+    }
+
+    @Test
+    void responsesAfterCompletionAreDropped() throws Exception {
+        ResponseCollector responseCollector = collector(CompletionPolicy.first());
+        CompletableFuture<ResponseCollector.Completion> completion = responseCollector.awaitCompletion(LONG_TIMEOUT);
+
+        responseCollector.accept(response("a"));
+        completion.get(5, TimeUnit.SECONDS);
+        responseCollector.accept(response("b"));
+
+        assertEquals(List.of("a"), received);
+    }
+
+    @Test
+    void responsesAfterTimeoutAreDropped() throws Exception {
+        ResponseCollector responseCollector = collector(CompletionPolicy.timeout());
+        responseCollector.awaitCompletion(Duration.ofMillis(1)).get(5, TimeUnit.SECONDS);
+
+        responseCollector.accept(response("a"));
+
+        assertEquals(List.of(), received);
+    }
+
+    @Test
+    void reevaluateCompletesOnceTheMembershipChangesTheOutcome() throws Exception {
+        AtomicBoolean membershipChanged = new AtomicBoolean();
+        ResponseCollector responseCollector = collector(responders -> membershipChanged.get());
+        CompletableFuture<ResponseCollector.Completion> completion = responseCollector.awaitCompletion(LONG_TIMEOUT);
+
+        responseCollector.reevaluate();
+        assertFalse(completion.isDone());
+        membershipChanged.set(true);
+        responseCollector.reevaluate();
+
+        assertEquals(new ResponseCollector.Completion(0, false), completion.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Races responses against the close of the response window, which the policy triggers while responses are still
+     * arriving, and checks that the sink saw exactly the responses that were counted at close, so none reached it
+     * after the window closed.
+     */
+    @Test
+    void noResponseReachesTheSinkAfterClose() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            List<String> sunk = new ArrayList<>();
+            ResponseCollector responseCollector = new ResponseCollector(CompletionPolicy.responses(5_000),
+                    response -> sunk.add(response.getResponderId()));
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> responders = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                Thread responder = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < 10_000; i++) {
+                        responseCollector.accept(response(thread + "-" + i));
+                    }
+                });
+                responder.start();
+                responders.add(responder);
+            }
+            CompletableFuture<ResponseCollector.Completion> completion =
+                    responseCollector.awaitCompletion(LONG_TIMEOUT);
+            start.countDown();
+            ResponseCollector.Completion closed = completion.get(5, TimeUnit.SECONDS);
+            for (Thread responder : responders) {
+                responder.join();
+            }
+
+            assertEquals(closed.responses(), sunk.size());
+            assertTrue(closed.responses() >= 5_000);
+            assertFalse(closed.timedOut());
+        }
+    }
+
+    @Test
+    void collectorWithAKnownResponderSetCompletesOnceAllHaveReplied() throws Exception {
+        ResponseCollector responseCollector = collector(CompletionPolicy.responders(Set.of("a", "b")));
+        CompletableFuture<ResponseCollector.Completion> completion = responseCollector.awaitCompletion(LONG_TIMEOUT);
+
+        responseCollector.accept(response("c"));
+        responseCollector.accept(response("a"));
+        assertFalse(completion.isDone());
+        responseCollector.accept(response("b"));
+
+        assertEquals(new ResponseCollector.Completion(3, false), completion.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,75 @@
+package org.storck.kafkamessagingexample.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ResponseRouter router(int replyPartition) {
+        return new ResponseRouter(replyPartition, new QueryMetrics(meterRegistry));
+    }
+
+    private double dropped() {
+        return meterRegistry.get("query.response.dropped").counter().count();
+    }
+
+    private static SimpleResponse response(String queryId) {
+        return SimpleResponse.builder().id(queryId).responderId("node-2").results(List.of()).build();
+    }
+
+    @Test
+    void responseIsRoutedToTheRegisteredQuery() {
+        ResponseRouter responseRouter = router(0);
+        List<SimpleResponse> received = new ArrayList<>();
+        responseRouter.register("query", new ResponseCollector(CompletionPolicy.timeout(), received::add));
+
+        assertTrue(responseRouter.routeResponse(response("query")));
+        assertEquals(1, received.size());
+        assertEquals(0, dropped());
+    }
+
+    @Test
+    void lateResponseOnTheReplyPartitionIsCountedAsDropped() {
+        ResponseRouter responseRouter = router(0);
+        responseRouter.register("query", new ResponseCollector(CompletionPolicy.timeout(), response -> { }));
+        responseRouter.unregister("query");
+
+        assertFalse(responseRouter.routeResponse(response("query")));
+        assertEquals(1, dropped());
+    }
+
+    @Test
+    void otherNodesResponsesOnTheSharedTopicAreNotCountedAsDropped() {
+        ResponseRouter responseRouter = router(-1);
+
+        assertFalse(responseRouter.routeResponse(response("another-nodes-query")));
+        assertEquals(0, dropped());
+    }
+
+    @Test
+    void replyAddressIsAddedOnlyWithAReplyPartition() {
+        Headers withPartition = new RecordHeaders();
+        router(3).addReplyAddress(withPartition);
+        Headers withoutPartition = new RecordHeaders();
+        router(-1).addReplyAddress(withoutPartition);
+
+        assertEquals(3, ByteBuffer.wrap(withPartition.lastHeader(KafkaHeaders.REPLY_PARTITION).value()).getInt());
+        assertNull(withoutPartition.lastHeader(KafkaHeaders.REPLY_PARTITION));
+        assertNull(withoutPartition.lastHeader(KafkaHeaders.REPLY_TOPIC));
+    }
+}
@@ -0,0 +1,30 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResponseTraceTest {
+
+    @Test
+    void latencyIsBrokenDownIntoLegs() {
+        ResponseTrace responseTrace = new ResponseTrace("trace", "query", "node-2", 1000, 1010, 1040, 1045);
+
+        assertEquals(Duration.ofMillis(10), responseTrace.dispatch());
+        assertEquals(Duration.ofMillis(30), responseTrace.processing());
+        assertEquals(Duration.ofMillis(5), responseTrace.returnTrip());
+        assertEquals(Duration.ofMillis(45), responseTrace.total());
+    }
+
+    @Test
+    void skewedResponderClockShiftsTimeBetweenLegsButNotTheTotal() {
+        ResponseTrace responseTrace = new ResponseTrace("trace", "query", "node-2", 1000, 990, 1020, 1045);
+
+        assertEquals(Duration.ofMillis(-10), responseTrace.dispatch());
+        assertEquals(Duration.ofMillis(30), responseTrace.processing());
+        assertEquals(Duration.ofMillis(25), responseTrace.returnTrip());
+        assertEquals(Duration.ofMillis(45), responseTrace.total());
+    }
+}
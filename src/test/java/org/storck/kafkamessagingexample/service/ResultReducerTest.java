@@ -0,0 +1,139 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResultReducerTest {
+
+    /**
+     * Reduces the local results and each remote response the way the query service does: remote responses are folded
+     * into one accumulator as they arrive, and the local results are combined ahead of them at the end.
+     */
+    @SafeVarargs
+    private static <A> List<String> reduce(ResultReducer<A> reducer, List<String> localResults,
+                                           List<String>... remoteResponses) {
+        A localAccumulator = reducer.newAccumulator();
+        reducer.accumulate(localAccumulator, localResults);
+        A remoteAccumulator = reducer.newAccumulator();
+        for (List<String> response : remoteResponses) {
+            reducer.accumulate(remoteAccumulator, response);
+        }
+        return reducer.finish(reducer.combine(localAccumulator, remoteAccumulator));
+    }
+
+    @Test
+    void concatKeepsLocalResultsAheadOfRemoteResultsInArrivalOrder() {
+        List<String> results = reduce(ResultReducer.concat(), List.of("local"), List.of("b", "a"), List.of("a"));
+
+        assertEquals(List.of("local", "b", "a", "a"), results);
+    }
+
+    @Test
+    void dedupKeepsTheFirstOccurrenceOfEachResult() {
+        List<String> results = reduce(ResultReducer.dedup(), List.of("b", "x"), List.of("a", "b"), List.of("x", "c"));
+
+        assertEquals(List.of("b", "x", "a", "c"), results);
+    }
+
+    @Test
+    void topKKeepsTheGreatestResultsGreatestFirst() {
+        List<String> results = reduce(ResultReducer.topK(3), List.of("b", "e"), List.of("a", "d"), List.of("c", "f"));
+
+        assertEquals(List.of("f", "e", "d"), results);
+    }
+
+    @Test
+    void topKKeepsOneCopyOfTiedResults() {
+        List<String> results = reduce(ResultReducer.topK(2), List.of("c", "c"), List.of("c", "a"), List.of("c"));
+
+        assertEquals(List.of("c", "a"), results);
+    }
+
+    @Test
+    void topKDoesNotEvictForAResultEqualToTheSmallestKept() {
+        List<String> results = reduce(ResultReducer.topK(2), List.of("b"), List.of("c", "b"), List.of("b", "a"));
+
+        assertEquals(List.of("c", "b"), results);
+    }
+
+    @Test
+    void topKReturnsFewerThanKResultsWhenThereAreFewer() {
+        assertEquals(List.of("b", "a"), reduce(ResultReducer.topK(5), List.of("a"), List.of("b")));
+        assertEquals(List.of(), reduce(ResultReducer.topK(5), List.of()));
+    }
+
+    @Test
+    void topKRejectsKLessThanOne() {
+        assertThrows(IllegalArgumentException.class, () -> ResultReducer.topK(0));
+    }
+
+    @Test
+    void countCountsEveryResult() {
+        List<String> results = reduce(ResultReducer.count(), List.of("a", "b"), List.of("a"), List.of(), List.of("c"));
+
+        assertEquals(List.of("4"), results);
+    }
+
+    @Test
+    void countOfNoResultsIsZero() {
+        assertEquals(List.of("0"), reduce(ResultReducer.count(), List.of()));
+    }
+
+    @Test
+    void mergeByKeyMergesTheValuesOfEachKeyInArrivalOrder() {
+        List<String> results = reduce(ResultReducer.mergeByKey(": "),
+                List.of("os: linux", "cpus: 4"), List.of("os: mac", "os: linux"), List.of("cpus: 8"));
+
+        assertEquals(List.of("os: linux, mac", "cpus: 4, 8"), results);
+    }
+
+    @Test
+    void mergeByKeySplitsAtTheFirstSeparator() {
+        List<String> results = reduce(ResultReducer.mergeByKey(": "), List.of("time: 12: 30"), List.of("time: 1"));
+
+        assertEquals(List.of("time: 12: 30, 1"), results);
+    }
+
+    @Test
+    void mergeByKeyKeepsResultsWithoutASeparatorAsBareKeys() {
+        List<String> results = reduce(ResultReducer.mergeByKey(": "), List.of("standalone"), List.of("standalone"));
+
+        assertEquals(List.of("standalone"), results);
+    }
+
+    @Test
+    void mergeByKeyMergesABareKeyWithValuesForTheSameKey() {
+        List<String> bareFirst = reduce(ResultReducer.mergeByKey(": "), List.of("os"), List.of("os: linux"));
+        List<String> bareLast = reduce(ResultReducer.mergeByKey(": "), List.of("os: linux"), List.of("os"));
+        List<String> bareRemote = reduce(ResultReducer.mergeByKey(": "), List.of(), List.of("os", "os: linux"));
+
+        assertEquals(List.of("os: linux"), bareFirst);
+        assertEquals(List.of("os: linux"), bareLast);
+        assertEquals(List.of("os: linux"), bareRemote);
+    }
+
+    @Test
+    void mergeByKeyKeepsEmptyKeysAndValues() {
+        List<String> results = reduce(ResultReducer.mergeByKey(": "), List.of(": orphan"), List.of("os: "));
+
+        assertEquals(List.of(": orphan", "os: "), results);
+    }
+
+    @Test
+    void mergeByKeySupportsMultiCharacterSeparators() {
+        List<String> results = reduce(ResultReducer.mergeByKey("=>"), List.of("a=>1", "a=2"), List.of("a=>=>2"));
+
+        assertEquals(List.of("a=>1, =>2", "a=2"), results);
+    }
+
+    @Test
+    void combineWithAnEmptyAccumulatorLeavesResultsUnchanged() {
+        assertEquals(List.of("a"), reduce(ResultReducer.concat(), List.of("a")));
+        assertEquals(List.of("a"), reduce(ResultReducer.concat(), List.of(), List.of("a")));
+        assertEquals(List.of("1"), reduce(ResultReducer.count(), List.of(), List.of("a")));
+    }
+}
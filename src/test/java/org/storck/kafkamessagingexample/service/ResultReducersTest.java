@@ -0,0 +1,35 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResultReducersTest {
+
+    private final ResultReducer<?> custom = ResultReducer.dedup();
+
+    private final ResultReducers resultReducers = new ResultReducers(Map.of("custom", custom));
+
+    @Test
+    void resolvesBuiltInReducers() {
+        assertEquals(ResultReducer.concat(), resultReducers.resolve(ResultReducers.CONCAT, 10));
+        assertEquals(ResultReducer.dedup(), resultReducers.resolve("dedup", 10));
+        assertEquals(ResultReducer.topK(3), resultReducers.resolve("top-k", 3));
+        assertEquals(ResultReducer.count(), resultReducers.resolve("count", 10));
+        assertEquals(ResultReducer.mergeByKey(": "), resultReducers.resolve("merge-by-key", 10));
+    }
+
+    @Test
+    void resolvesReducerBeansByName() {
+        assertSame(custom, resultReducers.resolve("custom", 10));
+    }
+
+    @Test
+    void rejectsUnknownReducers() {
+        assertThrows(IllegalArgumentException.class, () -> resultReducers.resolve("median", 10));
+    }
+}
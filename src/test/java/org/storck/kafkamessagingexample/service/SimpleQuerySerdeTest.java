@@ -0,0 +1,109 @@
+package org.storck.kafkamessagingexample.service;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.storck.kafkamessagingexample.config.WireFormatProperties;
+import org.storck.kafkamessagingexample.model.SimpleQuery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SimpleQuerySerdeTest {
+
+    private static final String TOPIC = "query-topic";
+
+    private static SimpleQuerySerde serde(WireFormat wireFormat) {
+        WireFormatProperties wireFormatProperties = new WireFormatProperties();
+        wireFormatProperties.setDefaultFormat(wireFormat);
+        return new SimpleQuerySerde(new JsonMapper(), wireFormatProperties);
+    }
+
+    private static SimpleQuery roundTrip(WireFormat wireFormat, SimpleQuery query) {
+        SimpleQuerySerde serde = serde(wireFormat);
+        return serde.deserializer().deserialize(TOPIC, serde.serializer().serialize(TOPIC, query));
+    }
+
+    @Test
+    void singleQueryRoundTripsInBothFormats() {
+        SimpleQuery query = SimpleQuery.builder().id("q1").query("uptime").type("system-info").build();
+        assertEquals(query, roundTrip(WireFormat.BINARY, query));
+        assertEquals(query, roundTrip(WireFormat.JSON, query));
+    }
+
+    @Test
+    void batchQueryRoundTripsInBothFormats() {
+        SimpleQuery query = SimpleQuery.builder().id("q2").type("system-info").batch(List.of("a", "", "c")).build();
+        assertEquals(query, roundTrip(WireFormat.BINARY, query));
+        assertEquals(query, roundTrip(WireFormat.JSON, query));
+    }
+
+    @Test
+    void singleQueryIsWrittenInTheVersionThatPredatesBatches() {
+        SimpleQuery query = SimpleQuery.builder().id("q1").query("uptime").build();
+        assertEquals(2, SimpleQuerySerde.encode(query)[1]);
+        assertEquals(SimpleQuerySerde.BINARY_VERSION,
+                SimpleQuerySerde.encode(SimpleQuery.builder().id("q2").batch(List.of("a")).build())[1]);
+    }
+
+    @Test
+    void legacyJsonIsRead() {
+        byte[] json = "{\"id\":\"q1\",\"query\":\"uptime\",\"addedLater\":true}".getBytes(StandardCharsets.UTF_8);
+        SimpleQuery query = serde(WireFormat.BINARY).deserializer().deserialize(TOPIC, json);
+        assertEquals("q1", query.getId());
+        assertEquals("uptime", query.getQuery());
+        assertNull(query.getType());
+        assertNull(query.getBatch());
+    }
+
+    @Test
+    void firstBinaryVersionIsRead() {
+        byte[] data = new BinaryEncoding.Writer(16)
+                .header((byte) 1)
+                .writeString("q1")
+                .writeString("uptime")
+                .toByteArray();
+        SimpleQuery query = SimpleQuerySerde.decode(data);
+        assertEquals("q1", query.getId());
+        assertEquals("uptime", query.getQuery());
+        assertNull(query.getType());
+    }
+
+    @Test
+    void fieldsOfNewerVersionsAreIgnored() {
+        byte[] data = new BinaryEncoding.Writer(16)
+                .header((byte) 9)
+                .writeString("q1")
+                .writeString(null)
+                .writeString("system-info")
+                .writeStrings(List.of("a", "b"))
+                .writeString("added in a later version")
+                .writeVarint(42)
+                .toByteArray();
+        assertEquals(SimpleQuery.builder().id("q1").type("system-info").batch(List.of("a", "b")).build(),
+                SimpleQuerySerde.decode(data));
+    }
+
+    @Test
+    void lengthBeyondTheValueIsRejected() {
+        byte[] data = new BinaryEncoding.Writer(16)
+                .header((byte) 3)
+                .writeString("q1")
+                .writeString("uptime")
+                .writeString("system-info")
+                .writeVarint(Integer.MAX_VALUE)
+                .toByteArray();
+        assertThrows(IllegalStateException.class, () -> SimpleQuerySerde.decode(data));
+    }
+
+    @Test
+    void truncatedValueIsRejected() {
+        byte[] data = SimpleQuerySerde.encode(SimpleQuery.builder().id("q1").query("uptime").build());
+        assertThrows(IllegalStateException.class,
+                () -> SimpleQuerySerde.decode(Arrays.copyOf(data, data.length - 3)));
+    }
+}
@@ -0,0 +1,75 @@
+package org.storck.kafkamessagingexample.service;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.storck.kafkamessagingexample.config.WireFormatProperties;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SimpleResponseSerdeTest {
+
+    private static final String TOPIC = "result-topic";
+
+    private static SimpleResponseSerde serde(WireFormat wireFormat) {
+        WireFormatProperties wireFormatProperties = new WireFormatProperties();
+        wireFormatProperties.setDefaultFormat(wireFormat);
+        return new SimpleResponseSerde(new JsonMapper(), wireFormatProperties);
+    }
+
+    private static SimpleResponse roundTrip(WireFormat wireFormat, SimpleResponse response) {
+        SimpleResponseSerde serde = serde(wireFormat);
+        return serde.deserializer().deserialize(TOPIC, serde.serializer().serialize(TOPIC, response));
+    }
+
+    @Test
+    void singleResponseRoundTripsInBothFormats() {
+        SimpleResponse response = SimpleResponse.builder()
+                .id("q1")
+                .responderId("node-1")
+                .results(List.of("a", "b"))
+                .build();
+        assertEquals(response, roundTrip(WireFormat.BINARY, response));
+        assertEquals(response, roundTrip(WireFormat.JSON, response));
+        assertEquals(1, SimpleResponseSerde.encode(response)[1]);
+    }
+
+    @Test
+    void batchResponseRoundTripsInBothFormats() {
+        SimpleResponse response = SimpleResponse.builder()
+                .id("q2")
+                .responderId("node-1")
+                .batchResults(List.of(List.of("a"), List.of(), List.of("c", "d")))
+                .build();
+        assertEquals(response, roundTrip(WireFormat.BINARY, response));
+        assertEquals(response, roundTrip(WireFormat.JSON, response));
+        assertEquals(SimpleResponseSerde.BINARY_VERSION, SimpleResponseSerde.encode(response)[1]);
+    }
+
+    @Test
+    void legacyJsonIsRead() {
+        byte[] json = "{\"id\":\"q1\",\"responderId\":\"node-1\",\"results\":[\"a\"],\"addedLater\":1}"
+                .getBytes(StandardCharsets.UTF_8);
+        SimpleResponse response = serde(WireFormat.BINARY).deserializer().deserialize(TOPIC, json);
+        assertEquals(List.of("a"), response.getResults());
+        assertNull(response.getBatchResults());
+    }
+
+    @Test
+    void listCountBeyondTheValueIsRejected() {
+        byte[] data = new BinaryEncoding.Writer(16)
+                .header((byte) 2)
+                .writeString("q1")
+                .writeString("node-1")
+                .writeStrings(null)
+                .writeVarint(1_000_000)
+                .writeStrings(List.of("a"))
+                .toByteArray();
+        assertThrows(IllegalStateException.class, () -> SimpleResponseSerde.decode(data));
+    }
+}
@@ -0,0 +1,75 @@
+package org.storck.kafkamessagingexample.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrackingExecutorTest {
+
+    private final List<Runnable> deferred = new ArrayList<>();
+
+    private final TrackingExecutor trackingExecutor = new TrackingExecutor(deferred::add);
+
+    @Test
+    void finishesOnceSubmissionsAreClosedAndEveryTaskHasReturned() {
+        List<String> ran = new ArrayList<>();
+        trackingExecutor.execute(() -> ran.add("a"));
+        trackingExecutor.execute(() -> ran.add("b"));
+        trackingExecutor.closeSubmissions();
+        assertFalse(trackingExecutor.finished().isDone());
+
+        deferred.get(1).run();
+        assertFalse(trackingExecutor.finished().isDone());
+        deferred.get(0).run();
+
+        assertTrue(trackingExecutor.finished().isDone());
+        assertEquals(List.of("b", "a"), ran);
+    }
+
+    @Test
+    void doesNotFinishWhileSubmissionsAreOpen() {
+        trackingExecutor.execute(() -> { });
+        deferred.get(0).run();
+
+        assertFalse(trackingExecutor.finished().isDone());
+        trackingExecutor.closeSubmissions();
+        assertTrue(trackingExecutor.finished().isDone());
+    }
+
+    @Test
+    void finishesAtCloseWhenNothingWasSubmitted() {
+        trackingExecutor.closeSubmissions();
+
+        assertTrue(trackingExecutor.finished().isDone());
+    }
+
+    @Test
+    void taskThatThrowsStillCountsAsReturned() {
+        trackingExecutor.execute(() -> {
+            throw new IllegalStateException("broken");
+        });
+        trackingExecutor.closeSubmissions();
+
+        assertThrows(IllegalStateException.class, () -> deferred.get(0).run());
+        assertTrue(trackingExecutor.finished().isDone());
+    }
+
+    @Test
+    void rejectedTaskIsNotWaitedFor() {
+        TrackingExecutor rejecting = new TrackingExecutor(task -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        assertThrows(RejectedExecutionException.class, () -> rejecting.execute(() -> { }));
+        rejecting.closeSubmissions();
+
+        assertTrue(rejecting.finished().isDone());
+    }
+}
@@ -0,0 +1,130 @@
+package org.storck.kafkamessagingexample.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.storck.kafkamessagingexample.model.SimpleResponse;
+import org.storck.kafkamessagingexample.service.QueryAdmission;
+import org.storck.kafkamessagingexample.service.QueryRejectedException;
+import org.storck.kafkamessagingexample.service.QueryService;
+import org.storck.kafkamessagingexample.service.ResponderMembership;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class QueryControllerTest {
+
+    private static final long ASYNC_WAIT_MS = 5000;
+
+    private final QueryController queryController = new QueryController(null, null, null, null, null, false);
+
+    private final QueryService queryService = mock(QueryService.class);
+
+    private final CompletableFuture<Void> streamed = new CompletableFuture<>();
+
+    private final AtomicReference<Consumer<SimpleResponse>> responseConsumer = new AtomicReference<>();
+
+    /**
+     * Serves the controller over a query service whose stream is driven by the test: responses are handed to the
+     * consumer the controller passed in, and the stream ends when the test completes {@link #streamed}.
+     */
+    private MockMvc streamingMockMvc() {
+        when(queryService.streamLocalQuery(eq("system-info"), eq("select all"), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    responseConsumer.set(invocation.getArgument(4));
+                    return streamed;
+                });
+        QueryAdmission queryAdmission = new QueryAdmission(false, 4, 64, 256, Duration.ofSeconds(1), true,
+                Runnable::run, new SimpleMeterRegistry());
+        QueryController controller = new QueryController(queryService, mock(ResponderMembership.class), null, null,
+                queryAdmission, false);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private static SimpleResponse response(String responderId) {
+        return SimpleResponse.builder()
+                .id("query")
+                .responderId(responderId)
+                .results(List.of("from " + responderId))
+                .build();
+    }
+
+    private MvcResult startStream(MockMvc mockMvc) throws Exception {
+        return mockMvc.perform(post("/api/v1/query/stream").content("select all"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @Test
+    void fullAdmissionQueueIsTooManyRequests() {
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, queryController.handleQueryRejected(
+                new QueryRejectedException(QueryRejectedException.Reason.QUEUE_FULL, "full")).getStatusCode());
+    }
+
+    @Test
+    void admissionQueueTimeoutIsServiceUnavailable() {
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, queryController.handleQueryRejected(
+                new QueryRejectedException(QueryRejectedException.Reason.QUEUE_TIMEOUT, "timeout")).getStatusCode());
+    }
+
+    @Test
+    void streamSendsEachResponseAsItArrivesAndCompletesWithTheQuery() throws Exception {
+        MvcResult mvcResult = startStream(streamingMockMvc());
+
+        responseConsumer.get().accept(response("node-1"));
+        String afterFirst = mvcResult.getResponse().getContentAsString();
+        assertTrue(afterFirst.contains("id:node-1"), afterFirst);
+        assertTrue(afterFirst.contains("from node-1"), afterFirst);
+        assertFalse(afterFirst.contains("node-2"), afterFirst);
+
+        responseConsumer.get().accept(response("node-2"));
+        String afterSecond = mvcResult.getResponse().getContentAsString();
+        assertTrue(afterSecond.contains("id:node-2"), afterSecond);
+        assertTrue(afterSecond.contains("event:response"), afterSecond);
+
+        streamed.complete(null);
+        assertNull(mvcResult.getAsyncResult(ASYNC_WAIT_MS));
+    }
+
+    /**
+     * The service ends the stream normally when the completion policy is satisfied or the timeout elapses, so the
+     * emitter completes the same way whichever it was, even with no remote responses.
+     */
+    @Test
+    void streamCompletesWhenTheQueryEndsWithoutRemoteResponses() throws Exception {
+        MvcResult mvcResult = startStream(streamingMockMvc());
+
+        responseConsumer.get().accept(response("node-1"));
+        streamed.complete(null);
+
+        assertNull(mvcResult.getAsyncResult(ASYNC_WAIT_MS));
+        assertTrue(mvcResult.getResponse().getContentAsString().contains("id:node-1"));
+    }
+
+    @Test
+    void failedStreamCompletesTheEmitterWithTheError() throws Exception {
+        MvcResult mvcResult = startStream(streamingMockMvc());
+
+        streamed.completeExceptionally(new IllegalStateException("Failed to process local query"));
+
+        assertInstanceOf(IllegalStateException.class, mvcResult.getAsyncResult(ASYNC_WAIT_MS));
+    }
+}